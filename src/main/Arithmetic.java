@@ -0,0 +1,119 @@
+package main;
+
+import java.math.BigInteger;
+
+// NUMERO arithmetic beyond the int range. A NUMERO value is an Integer when it
+// fits in 32 bits, a Long when it fits in 64 and a BigInteger otherwise. It is
+// always in the smallest of these, so equal numbers are equal objects.
+//
+// The interpreter handles two Integers itself and only comes here for the
+// rest, including an int result that overflowed.
+final class Arithmetic {
+    private Arithmetic() {
+    }
+
+    static boolean isInteger(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof BigInteger;
+    }
+
+    static Object valueOf(long value) {
+        int small = (int) value;
+        if (small == value) return small;
+        return value;
+    }
+
+    static Object valueOf(BigInteger value) {
+        if (value.bitLength() < 64) return valueOf(value.longValue());
+        return value;
+    }
+
+    // A NUMERO literal or DAWAT input, or null when `text` is not an integer.
+    static Object parse(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            // Too large for an int, or not an integer at all.
+        }
+        try {
+            return valueOf(new BigInteger(text));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static Object add(Object left, Object right) {
+        if (isLong(left) && isLong(right)) {
+            long a = ((Number) left).longValue();
+            long b = ((Number) right).longValue();
+            long sum = a + b;
+            if (((a ^ sum) & (b ^ sum)) >= 0) return valueOf(sum);
+        }
+        return valueOf(big(left).add(big(right)));
+    }
+
+    static Object subtract(Object left, Object right) {
+        if (isLong(left) && isLong(right)) {
+            long a = ((Number) left).longValue();
+            long b = ((Number) right).longValue();
+            long difference = a - b;
+            if (((a ^ b) & (a ^ difference)) >= 0) return valueOf(difference);
+        }
+        return valueOf(big(left).subtract(big(right)));
+    }
+
+    static Object multiply(Object left, Object right) {
+        if (isLong(left) && isLong(right)) {
+            long a = ((Number) left).longValue();
+            long b = ((Number) right).longValue();
+            long high = Math.multiplyHigh(a, b);
+            long product = a * b;
+            if ((high == 0 && product >= 0) || (high == -1 && product < 0)) return valueOf(product);
+        }
+        return valueOf(big(left).multiply(big(right)));
+    }
+
+    // Truncates towards zero, like int division. The divisor is not zero.
+    static Object divide(Object left, Object right) {
+        if (isLong(left) && isLong(right)) {
+            long a = ((Number) left).longValue();
+            long b = ((Number) right).longValue();
+            if (a != Long.MIN_VALUE || b != -1) return valueOf(a / b);
+        }
+        return valueOf(big(left).divide(big(right)));
+    }
+
+    // Takes the sign of the dividend, like int %.
+    static Object remainder(Object left, Object right) {
+        if (isLong(left) && isLong(right)) {
+            return valueOf(((Number) left).longValue() % ((Number) right).longValue());
+        }
+        return valueOf(big(left).remainder(big(right)));
+    }
+
+    static Object negate(Object value) {
+        if (isLong(value) && ((Number) value).longValue() != Long.MIN_VALUE) {
+            return valueOf(-((Number) value).longValue());
+        }
+        return valueOf(big(value).negate());
+    }
+
+    static int compare(Object left, Object right) {
+        if (isLong(left) && isLong(right)) {
+            return Long.compare(((Number) left).longValue(), ((Number) right).longValue());
+        }
+        return big(left).compareTo(big(right));
+    }
+
+    static boolean isZero(Object value) {
+        return isLong(value) ? ((Number) value).longValue() == 0 : ((BigInteger) value).signum() == 0;
+    }
+
+    private static boolean isLong(Object value) {
+        return value instanceof Integer || value instanceof Long;
+    }
+
+    private static BigInteger big(Object value) {
+        if (value instanceof BigInteger) return (BigInteger) value;
+        return BigInteger.valueOf(((Number) value).longValue());
+    }
+}
@@ -0,0 +1,121 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+// Thin client for Daemon. It submits a script with its DAWAT input, relays the
+// output as it arrives and exits with the script's exit code, so it can stand
+// in for running the script directly.
+//
+//   java main.Client [--socket <path> | --port <port>] [--input <file>] script
+//
+// Without --input, piped standard input is forwarded.
+public class Client {
+    public static void main(String[] args) throws IOException {
+        Path socket = Daemon.DEFAULT_SOCKET;
+        int port = -1;
+        Path input = null;
+        String script = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--socket") && i + 1 < args.length) {
+                socket = Paths.get(args[++i]);
+            } else if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--input") && i + 1 < args.length) {
+                input = Paths.get(args[++i]);
+            } else if (script == null && !args[i].startsWith("--")) {
+                script = args[i];
+            } else {
+                usage();
+            }
+        }
+        if (script == null) {
+            usage();
+        }
+
+        byte[] source = Files.readAllBytes(Paths.get(script));
+        byte[] lines = input != null ? Files.readAllBytes(input)
+                : System.console() == null ? System.in.readAllBytes() : new byte[0];
+
+        int code;
+        try {
+            code = port >= 0 ? overHttp(port, source, lines) : overSocket(socket, source, lines);
+        } catch (IOException e) {
+            System.err.println("Cannot reach the daemon: " + e.getMessage());
+            code = 69;
+        }
+        System.exit(code);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: client [--socket <path> | --port <port>] [--input <file>] script");
+        System.exit(64);
+    }
+
+    private static int overSocket(Path path, byte[] source, byte[] lines) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(path))) {
+            send(Channels.newOutputStream(channel), source, lines);
+            channel.shutdownOutput();
+            return receive(Channels.newInputStream(channel));
+        }
+    }
+
+    private static int overHttp(int port, byte[] source, byte[] lines) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create("http://localhost:" + port + "/run")
+                .toURL().openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(8L + source.length + lines.length);
+        try {
+            send(connection.getOutputStream(), source, lines);
+            return receive(connection.getInputStream());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static void send(OutputStream stream, byte[] source, byte[] lines) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        Daemon.writeBlock(out, source);
+        Daemon.writeBlock(out, lines);
+        out.flush();
+    }
+
+    private static int receive(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        for (;;) {
+            byte kind;
+            try {
+                kind = in.readByte();
+            } catch (EOFException e) {
+                throw new IOException("Connection closed before the script finished.");
+            }
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            if (kind == Daemon.EXIT) {
+                System.out.flush();
+                System.err.flush();
+                return ByteBuffer.wrap(bytes).getInt();
+            }
+            PrintStream target = kind == Daemon.ERR ? System.err : System.out;
+            target.write(bytes, 0, bytes.length);
+            target.flush();
+        }
+    }
+}
@@ -0,0 +1,661 @@
+package main;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compiles checked and optimized statements into a tree of closures. Each
+// closure is bound when it is compiled to its children and to the code for its
+// operator, so running a program makes no visitor calls and switches on no
+// token types, and most call sites only ever see one kind of closure.
+//
+// The closures work on the state of the Interpreter they are given and fall
+// back to its methods for everything but the common cases, so a compiled
+// program behaves exactly like the tree it came from. Statements that are rare
+// or already coarse, such as DAWAT and DUNGAN, are run by the interpreter
+// itself, as are the bodies of loops it runs in parallel.
+//
+// Compiled code skips the hooks of an InstrumentedInterpreter, which should
+// walk the tree instead.
+final class Compiler implements Expr.Visitor<Compiler.Code>, Stmt.Visitor<Compiler.Action> {
+    interface Code {
+        Object run(Interpreter in);
+    }
+
+    interface Action {
+        void run(Interpreter in);
+    }
+
+    // Filled in once every function is known, so a call can refer to a body
+    // that is still being compiled.
+    private static final class Body {
+        Action[] actions;
+    }
+
+    private final Map<Integer, Stmt.Function> functions = new HashMap<>();
+    private final Map<Stmt.Function, Body> bodies = new HashMap<>();
+
+    // One action for each top-level statement, in the same order.
+    Action[] compile(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function) {
+                Stmt.Function function = (Stmt.Function) statement;
+                functions.put(function.name.symbol, function);
+                bodies.put(function, new Body());
+            }
+        }
+        for (Map.Entry<Stmt.Function, Body> entry : bodies.entrySet()) {
+            entry.getValue().actions = block(entry.getKey().body);
+        }
+        return block(statements);
+    }
+
+    private Code compile(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Code[] compileAll(List<Expr> exprs) {
+        Code[] codes = new Code[exprs.size()];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = compile(exprs.get(i));
+        }
+        return codes;
+    }
+
+    private Action[] block(List<Stmt> statements) {
+        Action[] actions = new Action[statements.size()];
+        for (int i = 0; i < actions.length; i++) {
+            actions[i] = statements.get(i).accept(this);
+        }
+        return actions;
+    }
+
+    private static Action interpreted(Stmt stmt) {
+        return in -> in.execute(stmt);
+    }
+
+    private static boolean test(Code condition, Interpreter in) {
+        Object value = condition.run(in);
+        if (!(value instanceof Boolean)) {
+            throw new RuntimeError(null, "Condition must be a Boolean.");
+        }
+        return (boolean) value;
+    }
+
+    @Override
+    public Code visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        return in -> value;
+    }
+
+    @Override
+    public Code visitGroupingExpr(Expr.Grouping expr) {
+        return compile(expr.expression);
+    }
+
+    @Override
+    public Code visitVariableExpr(Expr.Variable expr) {
+        Token name = expr.name;
+        return in -> in.environment.get(name);
+    }
+
+    @Override
+    public Code visitInvariantExpr(Expr.Invariant expr) {
+        Code expression = compile(expr.expression);
+        int slot = expr.slot;
+        return in -> {
+            Object value = in.hoisted[slot];
+            if (value == Interpreter.UNSET) {
+                value = expression.run(in);
+                in.hoisted[slot] = value;
+            }
+            return value;
+        };
+    }
+
+    // Each operator handles two ints itself and leaves the rest, overflow
+    // included, to Interpreter.binary.
+    @Override
+    public Code visitBinaryExpr(Expr.Binary expr) {
+        Code left = compile(expr.left);
+        Code right = compile(expr.right);
+        switch (expr.operator.type) {
+            case PLUS:
+                return in -> {
+                    Object a = left.run(in), b = right.run(in);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        long sum = (long) (int) a + (int) b;
+                        if (sum == (int) sum) return (int) sum;
+                    }
+                    return in.binary(expr, a, b);
+                };
+            case MINUS:
+                return in -> {
+                    Object a = left.run(in), b = right.run(in);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        long difference = (long) (int) a - (int) b;
+                        if (difference == (int) difference) return (int) difference;
+                    }
+                    return in.binary(expr, a, b);
+                };
+            case STAR:
+                return in -> {
+                    Object a = left.run(in), b = right.run(in);
+                    if (a instanceof Integer && b instanceof Integer) {
+                        long product = (long) (int) a * (int) b;
+                        if (product == (int) product) return (int) product;
+                    }
+                    return in.binary(expr, a, b);
+                };
+            case SLASH:
+                return in -> {
+                    Object a = left.run(in), b = right.run(in);
+                    if (a instanceof Integer && b instanceof Integer && (int) b != 0 && (int) b != -1) {
+                        return (int) a / (int) b;
+                    }
+                    return in.binary(expr, a, b);
+                };
+            case MODULO:
+                return in -> {
+                    Object a = left.run(in), b = right.run(in);
+                    if (a instanceof Integer && b instanceof Integer && (int) b != 0) {
+                        return (int) a % (int) b;
+                    }
+                    return in.binary(expr, a, b);
+                };
+            case LESS_THAN:
+                return in -> {
+                    Object a = left.run(in), b = right.run(in);
+                    if (a instanceof Integer && b instanceof Integer) return (int) a < (int) b;
+                    return in.binary(expr, a, b);
+                };
+            case LESS_THAN_EQUAL:
+                return in -> {
+                    Object a = left.run(in), b = right.run(in);
+                    if (a instanceof Integer && b instanceof Integer) return (int) a <= (int) b;
+                    return in.binary(expr, a, b);
+                };
+            case GREATER_THAN:
+                return in -> {
+                    Object a = left.run(in), b = right.run(in);
+                    if (a instanceof Integer && b instanceof Integer) return (int) a > (int) b;
+                    return in.binary(expr, a, b);
+                };
+            case GREATER_THAN_EQUAL:
+                return in -> {
+                    Object a = left.run(in), b = right.run(in);
+                    if (a instanceof Integer && b instanceof Integer) return (int) a >= (int) b;
+                    return in.binary(expr, a, b);
+                };
+            case EQUAL_EQUAL:
+                return in -> {
+                    Object a = left.run(in);
+                    return Interpreter.isEqual(a, right.run(in));
+                };
+            case NOT_EQUAL:
+                return in -> {
+                    Object a = left.run(in);
+                    return !Interpreter.isEqual(a, right.run(in));
+                };
+            default:
+                return in -> {
+                    Object a = left.run(in);
+                    return in.binary(expr, a, right.run(in));
+                };
+        }
+    }
+
+    @Override
+    public Code visitUnaryExpr(Expr.Unary expr) {
+        Code right = compile(expr.right);
+        switch (expr.operator.type) {
+            case NOT:
+                return in -> !Interpreter.isTruthy(right.run(in));
+            case MINUS:
+                return in -> {
+                    Object value = right.run(in);
+                    if (value instanceof Integer && (int) value != Integer.MIN_VALUE) return -(int) value;
+                    return in.unary(expr, value);
+                };
+            default:
+                return in -> in.unary(expr, right.run(in));
+        }
+    }
+
+    @Override
+    public Code visitLogicalExpr(Expr.Logical expr) {
+        Code left = compile(expr.left);
+        Code right = compile(expr.right);
+        if (expr.operator.type == TokenType.OR) {
+            return in -> {
+                Object value = left.run(in);
+                return Interpreter.isTruthy(value) ? value : right.run(in);
+            };
+        }
+        return in -> {
+            Object value = left.run(in);
+            return Interpreter.isTruthy(value) ? right.run(in) : value;
+        };
+    }
+
+    @Override
+    public Code visitAssignExpr(Expr.Assign expr) {
+        Token name = expr.name;
+        Code value = compile(expr.value);
+        if (expr.verified) {
+            return in -> {
+                Object result = value.run(in);
+                in.environment.lookup(name).setValue(result);
+                return result;
+            };
+        }
+        return in -> {
+            Object result = value.run(in);
+            in.environment.assign(name, result);
+            return result;
+        };
+    }
+
+    @Override
+    public Code visitIndexExpr(Expr.Index expr) {
+        Token name = expr.name;
+        Code index = compile(expr.index);
+        return in -> {
+            Object array = in.environment.get(name);
+            return in.element(name, array, index.run(in));
+        };
+    }
+
+    @Override
+    public Code visitIndexAssignExpr(Expr.IndexAssign expr) {
+        Token name = expr.name;
+        Code index = compile(expr.index);
+        Code value = compile(expr.value);
+        return in -> {
+            // lookup rather than get, so a forked array is copied before it is written.
+            Object array = in.environment.lookup(name).getValue();
+            Object position = index.run(in);
+            return in.store(expr, array, position, value.run(in));
+        };
+    }
+
+    @Override
+    public Code visitLengthExpr(Expr.Length expr) {
+        Token name = expr.name;
+        return in -> in.length(name, in.environment.get(name));
+    }
+
+    @Override
+    public Code visitCallExpr(Expr.Call expr) {
+        Stmt.Function callee = functions.get(expr.name.symbol);
+        if (callee == null) {
+            // Reports the undefined function when it runs.
+            return in -> in.visitCallExpr(expr);
+        }
+        Code[] arguments = compileAll(expr.arguments);
+        Body body = bodies.get(callee);
+        return in -> in.call(expr, arguments, body.actions);
+    }
+
+    @Override
+    public Code visitIncrementExpr(Expr.Increment expr) {
+        if (!(expr.delta instanceof Integer)) {
+            return in -> in.visitIncrementExpr(expr);
+        }
+        Token name = expr.name;
+        int delta = (int) expr.delta;
+        return in -> {
+            Variable variable = in.environment.lookup(name);
+            Object current = variable.getValue();
+            if (current instanceof Integer) {
+                long sum = (long) (int) current + delta;
+                if (sum == (int) sum) {
+                    Object value = (int) sum;
+                    variable.setValue(value);
+                    return value;
+                }
+            }
+            return in.visitIncrementExpr(expr);
+        };
+    }
+
+    @Override
+    public Code visitCompareConstantExpr(Expr.CompareConstant expr) {
+        Token name = expr.name;
+        Object constant = expr.constant;
+        if (expr.operator == TokenType.EQUAL_EQUAL) {
+            return in -> Interpreter.isEqual(in.environment.get(name), constant);
+        }
+        if (expr.operator == TokenType.NOT_EQUAL) {
+            return in -> !Interpreter.isEqual(in.environment.get(name), constant);
+        }
+        if (!(constant instanceof Integer)) {
+            return in -> in.visitCompareConstantExpr(expr);
+        }
+
+        int right = (int) constant;
+        switch (expr.operator) {
+            case LESS_THAN:
+                return in -> {
+                    Object value = in.environment.get(name);
+                    if (value instanceof Integer) return (int) value < right;
+                    return in.visitCompareConstantExpr(expr);
+                };
+            case LESS_THAN_EQUAL:
+                return in -> {
+                    Object value = in.environment.get(name);
+                    if (value instanceof Integer) return (int) value <= right;
+                    return in.visitCompareConstantExpr(expr);
+                };
+            case GREATER_THAN:
+                return in -> {
+                    Object value = in.environment.get(name);
+                    if (value instanceof Integer) return (int) value > right;
+                    return in.visitCompareConstantExpr(expr);
+                };
+            default:
+                return in -> {
+                    Object value = in.environment.get(name);
+                    if (value instanceof Integer) return (int) value >= right;
+                    return in.visitCompareConstantExpr(expr);
+                };
+        }
+    }
+
+    @Override
+    public Code visitRemainderExpr(Expr.Remainder expr) {
+        Token name = expr.name;
+        int divisor = expr.divisor;
+        int remainder = expr.remainder;
+        boolean equal = expr.equal;
+        return in -> {
+            Object value = in.environment.get(name);
+            if (value instanceof Integer) return ((int) value % divisor == remainder) == equal;
+            return in.visitRemainderExpr(expr);
+        };
+    }
+
+    @Override
+    public Action visitBlockStmt(Stmt.Block stmt) {
+        Action[] body = block(stmt.statements);
+        return in -> in.executeBlock(body, new Environment(in.environment));
+    }
+
+    @Override
+    public Action visitExpressionStmt(Stmt.Expression stmt) {
+        Code expression = compile(stmt.expression);
+        return in -> expression.run(in);
+    }
+
+    @Override
+    public Action visitIfStmt(Stmt.If stmt) {
+        Code condition = compile(stmt.condition);
+        Action[] then = block(stmt.thenBranch);
+        Action[] otherwise = stmt.elseBranch == null ? null : block(stmt.elseBranch);
+        if (stmt.elseIfConditions.isEmpty()) {
+            return in -> {
+                if (test(condition, in)) {
+                    in.executeBlock(then, new Environment(in.environment));
+                } else if (otherwise != null) {
+                    in.executeBlock(otherwise, new Environment(in.environment));
+                }
+            };
+        }
+
+        Code[] conditions = compileAll(stmt.elseIfConditions);
+        Action[][] branches = new Action[conditions.length][];
+        for (int i = 0; i < branches.length; i++) {
+            branches[i] = block(stmt.elseIfBranches.get(i));
+        }
+        return in -> {
+            if (test(condition, in)) {
+                in.executeBlock(then, new Environment(in.environment));
+                return;
+            }
+            for (int i = 0; i < conditions.length; i++) {
+                if (test(conditions[i], in)) {
+                    in.executeBlock(branches[i], new Environment(in.environment));
+                    return;
+                }
+            }
+            if (otherwise != null) {
+                in.executeBlock(otherwise, new Environment(in.environment));
+            }
+        };
+    }
+
+    @Override
+    public Action visitSwitchStmt(Stmt.Switch stmt) {
+        Stmt.If chain = stmt.chain;
+        int count = chain.elseIfBranches.size() + 1;
+        // One more than the chain has conditions, for KUNG WALA, which may be absent.
+        Action[][] branches = new Action[count + 1][];
+        branches[0] = block(chain.thenBranch);
+        for (int i = 1; i < count; i++) {
+            branches[i] = block(chain.elseIfBranches.get(i - 1));
+        }
+        branches[count] = chain.elseBranch == null ? null : block(chain.elseBranch);
+        Token name = stmt.name;
+        boolean[] scoped = stmt.scoped;
+        return in -> {
+            int branch = Interpreter.branch(stmt, in.environment.get(name));
+            Action[] body = branches[branch];
+            if (body != null) {
+                in.executeBlock(body, scoped[branch] ? new Environment(in.environment) : in.environment);
+            }
+        };
+    }
+
+    @Override
+    public Action visitPrintStmt(Stmt.Print stmt) {
+        Code expression = compile(stmt.expression);
+        return in -> {
+            in.hasDisplay = true;
+            in.display(expression.run(in));
+        };
+    }
+
+    @Override
+    public Action visitPrintConcatStmt(Stmt.PrintConcat stmt) {
+        Code[] parts = compileAll(stmt.parts);
+        return in -> {
+            in.hasDisplay = true;
+            // As in the interpreter, a part that prints goes out before the others.
+            OutputBuffer text = in.text;
+            int mark = text.length();
+            for (Code part : parts) {
+                Object value = part.run(in);
+                if (value != null) {
+                    text.append(value);
+                }
+            }
+            text.print(mark);
+        };
+    }
+
+    @Override
+    public Action visitScanStmt(Stmt.Scan stmt) {
+        return interpreted(stmt);
+    }
+
+    private static void loop(Interpreter in, Code condition, Action[] body, Code increment) {
+        while (test(condition, in)) {
+            in.executeBlock(body, new Environment(in.environment));
+            if (increment != null) {
+                increment.run(in);
+            }
+        }
+    }
+
+    @Override
+    public Action visitForStmt(Stmt.For stmt) {
+        Action initializer = stmt.initializer == null ? null : stmt.initializer.accept(this);
+        Code condition = compile(stmt.condition);
+        Code increment = stmt.increment == null ? null : compile(stmt.increment);
+        Action[] body = block(stmt.body);
+        List<Expr.Invariant> invariants = stmt.invariants;
+        return in -> {
+            if (initializer != null) {
+                initializer.run(in);
+            }
+            in.resetInvariants(invariants);
+            loop(in, condition, body, increment);
+        };
+    }
+
+    // Runs the number of iterations the header allows rather than testing the
+    // counter each time, which the optimizer has made sure is equivalent.
+    @Override
+    public Action visitCountedForStmt(Stmt.CountedFor stmt) {
+        Stmt.For loop = stmt.loop;
+        Action initializer = loop.initializer == null ? null : loop.initializer.accept(this);
+        Code condition = compile(loop.condition);
+        Code increment = loop.increment == null ? null : compile(loop.increment);
+        Action[] body = block(loop.body);
+        List<Expr.Invariant> invariants = loop.invariants;
+        Code bound = compile(stmt.bound);
+        Token name = stmt.name;
+        int step = stmt.step;
+        boolean observed = stmt.observed;
+        boolean scoped = stmt.scoped;
+        boolean independent = stmt.independent;
+        return in -> {
+            if (initializer != null) {
+                initializer.run(in);
+            }
+            in.resetInvariants(invariants);
+
+            Variable counter = in.environment.lookup(name);
+            Object start = counter.getValue();
+            Object limit = bound.run(in);
+            if (!(start instanceof Integer) || !(limit instanceof Integer)) {
+                loop(in, condition, body, increment);
+                return;
+            }
+            int i = (int) start;
+            long count = Interpreter.iterations(stmt, i, (int) limit);
+            if (count < 0) {
+                loop(in, condition, body, increment);
+                return;
+            }
+            if (independent && in.runParallel(stmt, counter, i, (int) limit)) {
+                return;
+            }
+            try {
+                for (long k = 0; k < count; k++) {
+                    if (observed) {
+                        counter.setValue(i);
+                    }
+                    in.executeBlock(body, scoped ? new Environment(in.environment) : in.environment);
+                    i += step;
+                }
+            } finally {
+                counter.setValue(i);
+            }
+        };
+    }
+
+    private Action declare(Stmt stmt, Token name, Expr initializer, boolean verified, boolean constant,
+                           TokenType type) {
+        if (initializer == null) {
+            return in -> in.environment.define(name, null, type);
+        }
+        // The interpreter checks the value and reports a mismatch.
+        if (!verified) {
+            return interpreted(stmt);
+        }
+        Code value = compile(initializer);
+        return in -> in.environment.define(name, value.run(in), type, !constant);
+    }
+
+    @Override
+    public Action visitIntStmt(Stmt.Int stmt) {
+        return declare(stmt, stmt.name, stmt.initializer, stmt.verified, stmt.constant, TokenType.INT);
+    }
+
+    @Override
+    public Action visitFloatStmt(Stmt.Float stmt) {
+        return declare(stmt, stmt.name, stmt.initializer, stmt.verified, stmt.constant, TokenType.FLOAT);
+    }
+
+    @Override
+    public Action visitCharStmt(Stmt.Char stmt) {
+        return declare(stmt, stmt.name, stmt.initializer, stmt.verified, stmt.constant, TokenType.CHAR);
+    }
+
+    @Override
+    public Action visitBoolStmt(Stmt.Bool stmt) {
+        return declare(stmt, stmt.name, stmt.initializer, stmt.verified, stmt.constant, TokenType.BOOL);
+    }
+
+    @Override
+    public Action visitTextStmt(Stmt.Text stmt) {
+        return declare(stmt, stmt.name, stmt.initializer, stmt.verified, stmt.constant, TokenType.STRING);
+    }
+
+    @Override
+    public Action visitArrayStmt(Stmt.Array stmt) {
+        return interpreted(stmt);
+    }
+
+    @Override
+    public Action visitAppendStmt(Stmt.Append stmt) {
+        Token name = stmt.name;
+        Code[] parts = compileAll(stmt.parts);
+        return in -> {
+            Variable variable = in.environment.lookup(name);
+            Object[] values = new Object[parts.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = parts[i].run(in);
+            }
+            for (Object value : values) {
+                in.append(variable, value);
+            }
+        };
+    }
+
+    @Override
+    public Action visitFunctionStmt(Stmt.Function stmt) {
+        return interpreted(stmt);
+    }
+
+    @Override
+    public Action visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tail) {
+            Expr.Call call = (Expr.Call) stmt.value;
+            Code[] arguments = compileAll(call.arguments);
+            boolean verified = call.verified;
+            return in -> {
+                Object[] values = new Object[arguments.length];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = arguments[i].run(in);
+                }
+                throw in.leave(null, values, verified);
+            };
+        }
+        if (stmt.value == null) {
+            return in -> {
+                throw in.leave(null, null, false);
+            };
+        }
+        Code value = compile(stmt.value);
+        boolean verified = stmt.verified;
+        return in -> {
+            Object result = value.run(in);
+            if (!verified) {
+                in.checkReturn(stmt, result);
+            }
+            throw in.leave(result, null, false);
+        };
+    }
+
+    @Override
+    public Action visitConcurrentStmt(Stmt.Concurrent stmt) {
+        return interpreted(stmt);
+    }
+
+    @Override
+    public Action visitDeferredStmt(Stmt.Deferred stmt) {
+        return interpreted(stmt);
+    }
+}
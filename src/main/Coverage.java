@@ -0,0 +1,50 @@
+package main;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// The listener behind --coverage: counts what a run executed and reports it as
+// one line. Safe to share between the blocks of a DUNGAN.
+class Coverage implements ExecutionListener {
+    private final Set<Stmt> statements = ConcurrentHashMap.newKeySet();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder assignments = new LongAdder();
+    private final Map<Stmt.If, Set<Integer>> branches = new ConcurrentHashMap<>();
+    private final LongAdder iterations = new LongAdder();
+
+    @Override
+    public void enterStatement(Stmt stmt) {
+        statements.add(stmt);
+        executed.increment();
+    }
+
+    @Override
+    public void assigned(Token name, Object value) {
+        assignments.increment();
+    }
+
+    @Override
+    public void branchTaken(Stmt.If stmt, int branch) {
+        if (branch >= 0) {
+            branches.computeIfAbsent(stmt, key -> ConcurrentHashMap.newKeySet()).add(branch);
+        }
+    }
+
+    @Override
+    public void loopIteration(Stmt.For loop) {
+        iterations.increment();
+    }
+
+    @Override
+    public String toString() {
+        int taken = 0;
+        for (Set<Integer> chain : branches.values()) {
+            taken += chain.size();
+        }
+        return "Coverage: " + statements.size() + " statements run " + executed.sum() + " times, "
+                + assignments.sum() + " assignments, " + taken + " KUNG branches taken, "
+                + iterations.sum() + " loop iterations";
+    }
+}
@@ -0,0 +1,217 @@
+package main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.Executors;
+
+// Long-lived server that runs submitted programs, so a short script costs a
+// round trip to classes that are already loaded and JIT-compiled rather than
+// a fresh JVM.
+//
+//   java main.Daemon [--socket <path>] [--port <port>] [--cache-entries <n>] [--cache-chars <n>]
+//
+// Both the Unix-domain socket and the local HTTP endpoint (POST /run) speak
+// the same protocol. A request is the program source followed by its DAWAT
+// input, each an int length and that many UTF-8 bytes. The response is a
+// stream of frames, each a kind byte, an int length and the bytes: OUT and
+// ERR carry output as it is produced, and a last EXIT frame carries the exit
+// code runFile would have used. Every submission gets a fresh Interpreter
+// on its own virtual thread, running the program from a ProgramCache when the
+// same source was submitted before. GET /stats lists the cache's counters.
+//
+// A virtual thread's stack can grow as far as -Xss allows, and no further, so
+// that sets how deeply a submitted program may nest: about 800 KUNG levels at
+// the default of 1 MB, and roughly 1,000 per MB given with -Xss.
+public class Daemon {
+    static final byte OUT = 1;
+    static final byte ERR = 2;
+    static final byte EXIT = 3;
+
+    static final Path DEFAULT_SOCKET = Paths.get(System.getProperty("java.io.tmpdir"), "bisaya.sock");
+
+    private static final int OUTPUT_BUFFER = 8192;
+
+    private static final int CACHE_ENTRIES = 256;
+    private static final long CACHE_CHARS = 64L << 20;
+    private static ProgramCache cache = new ProgramCache(CACHE_ENTRIES, CACHE_CHARS);
+
+    public static void main(String[] args) throws IOException {
+        Path socket = DEFAULT_SOCKET;
+        int port = -1;
+        int cacheEntries = CACHE_ENTRIES;
+        long cacheChars = CACHE_CHARS;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--socket") && i + 1 < args.length) {
+                socket = Paths.get(args[++i]);
+            } else if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache-entries") && i + 1 < args.length) {
+                cacheEntries = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--cache-chars") && i + 1 < args.length) {
+                cacheChars = Long.parseLong(args[++i]);
+            } else {
+                System.out.println("Usage: daemon [--socket <path>] [--port <port>] [--cache-entries <n>]"
+                        + " [--cache-chars <n>]");
+                System.exit(64);
+            }
+        }
+        cache = new ProgramCache(cacheEntries, cacheChars);
+
+        if (port >= 0) {
+            serveHttp(port);
+        }
+        serveSocket(socket);
+    }
+
+    private static void serveHttp(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/run", Daemon::handle);
+        server.createContext("/stats", Daemon::stats);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        System.err.println("Listening on http://localhost:" + server.getAddress().getPort() + "/run");
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, 0);
+            serve(exchange.getRequestBody(), exchange.getResponseBody());
+        }
+    }
+
+    private static void stats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body = cache.stats().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+
+    private static void serveSocket(Path path) throws IOException {
+        Files.deleteIfExists(path);
+        ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(path));
+        path.toFile().deleteOnExit();
+        System.err.println("Listening on " + path);
+
+        for (;;) {
+            SocketChannel channel = server.accept();
+            Thread.ofVirtual().start(() -> {
+                try (channel) {
+                    serve(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+                } catch (IOException e) {
+                    // The client went away; there is no one left to tell.
+                }
+            });
+        }
+    }
+
+    static void serve(InputStream request, OutputStream response) throws IOException {
+        DataInputStream in = new DataInputStream(request);
+        String source = readBlock(in);
+        String input = readBlock(in);
+
+        DataOutputStream frames = new DataOutputStream(response);
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FrameStream(frames, OUT), OUTPUT_BUFFER),
+                false, StandardCharsets.UTF_8);
+        PrintStream err = new PrintStream(new BufferedOutputStream(new FrameStream(frames, ERR), OUTPUT_BUFFER),
+                false, StandardCharsets.UTF_8);
+
+        int code = run(source, InputSource.reader(new BufferedReader(new StringReader(input))), out, err);
+        out.flush();
+        err.flush();
+        synchronized (frames) {
+            frames.writeByte(EXIT);
+            frames.writeInt(4);
+            frames.writeInt(code);
+            frames.flush();
+        }
+    }
+
+    // Runs one program the way Main.runFile does and returns its exit code.
+    static int run(String source, InputSource input, PrintStream out, PrintStream err) {
+        Main.Report report = new Main.Report(err);
+        Main.setReport(report);
+        try {
+            ProgramCache.Program program = cache.get(source);
+            if (program.statements == null) {
+                err.print(program.errors);
+                return program.code;
+            }
+
+            Interpreter interpreter = new Interpreter(new Environment(), out, err);
+            interpreter.setInput(input);
+            interpreter.interpret(program.statements);
+        } catch (StackOverflowError e) {
+            Main.tooDeep();
+        } catch (Exception e) {
+        } finally {
+            Main.setReport(null);
+        }
+        return report.hadError ? 65 : 0;
+    }
+
+    static String readBlock(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeBlock(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Sends everything written to it as frames of one kind.
+    private static class FrameStream extends OutputStream {
+        private final DataOutputStream frames;
+        private final byte kind;
+
+        FrameStream(DataOutputStream frames, byte kind) {
+            this.frames = frames;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            synchronized (frames) {
+                frames.writeByte(kind);
+                frames.writeInt(length);
+                frames.write(bytes, offset, length);
+                frames.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+// Collects the variables a group of statements may write or declare, so the
+// optimizer can tell which expressions keep their value across loop iterations.
+// Writes to variables that are not declared in an enclosing PUNDOK of the
+// analyzed statements themselves are also recorded as `escaping`.
+public class Effects implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    final BitSet assigned = new BitSet();
+    final BitSet declared = new BitSet();
+    final BitSet read = new BitSet();
+    final BitSet escaping = new BitSet();
+    boolean scans = false;
+    // Calls may write any global; IBALIK leaves the statements early.
+    boolean calls = false;
+    boolean returns = false;
+    final BitSet called = new BitSet();
+
+    private final List<BitSet> scopes = new ArrayList<>();
+
+    Effects() {
+        scopes.add(new BitSet());
+    }
+
+    static Effects of(List<Stmt> statements) {
+        Effects effects = new Effects();
+        effects.scan(statements);
+        return effects;
+    }
+
+    static Effects of(Stmt stmt) {
+        Effects effects = new Effects();
+        stmt.accept(effects);
+        return effects;
+    }
+
+    static Effects of(Expr expr) {
+        Effects effects = new Effects();
+        expr.accept(effects);
+        return effects;
+    }
+
+    boolean writes(int symbol) {
+        return assigned.get(symbol) || declared.get(symbol);
+    }
+
+    boolean writesAny(BitSet symbols) {
+        return assigned.intersects(symbols) || declared.intersects(symbols);
+    }
+
+    boolean isPure() {
+        return assigned.isEmpty() && declared.isEmpty() && !scans && !calls;
+    }
+
+    private void declare(Token name) {
+        declared.set(name.symbol);
+        scopes.get(scopes.size() - 1).set(name.symbol);
+    }
+
+    private void write(Token name) {
+        assigned.set(name.symbol);
+        for (BitSet scope : scopes) {
+            if (scope.get(name.symbol)) return;
+        }
+        escaping.set(name.symbol);
+    }
+
+    private void scanBlock(List<Stmt> statements) {
+        scopes.add(new BitSet());
+        scan(statements);
+        scopes.remove(scopes.size() - 1);
+    }
+
+    private void scan(List<Stmt> statements) {
+        if (statements == null) return;
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+    }
+
+    private void scan(Expr expr) {
+        if (expr != null) expr.accept(this);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        scanBlock(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        scan(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        scan(stmt.condition);
+        scanBlock(stmt.thenBranch);
+        for (Expr condition : stmt.elseIfConditions) {
+            scan(condition);
+        }
+        for (List<Stmt> branch : stmt.elseIfBranches) {
+            scanBlock(branch);
+        }
+        if (stmt.elseBranch != null) scanBlock(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        scan(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitScanStmt(Stmt.Scan stmt) {
+        scans = true;
+        for (Token identifier : stmt.identifiers) {
+            write(identifier);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        if (stmt.initializer != null) stmt.initializer.accept(this);
+        scan(stmt.condition);
+        scan(stmt.increment);
+        scanBlock(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitCountedForStmt(Stmt.CountedFor stmt) {
+        return visitForStmt(stmt.loop);
+    }
+
+    @Override
+    public Void visitSwitchStmt(Stmt.Switch stmt) {
+        return visitIfStmt(stmt.chain);
+    }
+
+    @Override
+    public Void visitIntStmt(Stmt.Int stmt) {
+        scan(stmt.initializer);
+        declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitFloatStmt(Stmt.Float stmt) {
+        scan(stmt.initializer);
+        declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitCharStmt(Stmt.Char stmt) {
+        scan(stmt.initializer);
+        declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitBoolStmt(Stmt.Bool stmt) {
+        scan(stmt.initializer);
+        declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitTextStmt(Stmt.Text stmt) {
+        scan(stmt.initializer);
+        declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitAppendStmt(Stmt.Append stmt) {
+        read.set(stmt.name.symbol);
+        for (Expr part : stmt.parts) {
+            scan(part);
+        }
+        write(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        returns = true;
+        scan(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        calls = true;
+        called.set(expr.name.symbol);
+        for (Expr argument : expr.arguments) {
+            scan(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        scan(expr.value);
+        write(expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        scan(expr.left);
+        scan(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        scan(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        scan(expr.left);
+        scan(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        scan(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        // An inlined PIRMI is a literal by the time anything runs.
+        if (expr.constant == null) read.set(expr.name.symbol);
+        return null;
+    }
+
+    @Override
+    public Void visitArrayStmt(Stmt.Array stmt) {
+        scan(stmt.size);
+        declare(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        read.set(expr.name.symbol);
+        scan(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexAssignExpr(Expr.IndexAssign expr) {
+        read.set(expr.name.symbol);
+        scan(expr.index);
+        scan(expr.value);
+        write(expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitLengthExpr(Expr.Length expr) {
+        read.set(expr.name.symbol);
+        return null;
+    }
+
+    @Override
+    public Void visitIncrementExpr(Expr.Increment expr) {
+        return expr.original.accept(this);
+    }
+
+    @Override
+    public Void visitCompareConstantExpr(Expr.CompareConstant expr) {
+        return expr.original.accept(this);
+    }
+
+    @Override
+    public Void visitRemainderExpr(Expr.Remainder expr) {
+        return expr.original.accept(this);
+    }
+
+    @Override
+    public Void visitPrintConcatStmt(Stmt.PrintConcat stmt) {
+        return stmt.original.accept(this);
+    }
+
+    @Override
+    public Void visitConcurrentStmt(Stmt.Concurrent stmt) {
+        for (List<Stmt> block : stmt.blocks) {
+            scanBlock(block);
+        }
+        return null;
+    }
+
+    // Analyzing a branch means parsing it; one with a syntax error stops the
+    // run if it is reached, so it writes nothing.
+    @Override
+    public Void visitDeferredStmt(Stmt.Deferred stmt) {
+        scan(stmt.parser.parsed(stmt));
+        return null;
+    }
+
+    @Override
+    public Void visitInvariantExpr(Expr.Invariant expr) {
+        scan(expr.expression);
+        return null;
+    }
+}
@@ -1,11 +1,16 @@
 package main;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.function.ObjIntConsumer;
 
 public class Environment {
     final Environment enclosing;
-    private final Map<String, Variable> values = new HashMap<>();
+
+    // Open-addressed table keyed by symbol id (stored as id + 1 so 0 marks an
+    // empty slot). Allocated on the first define, since most scopes hold nothing.
+    private int[] keys;
+    private Variable[] variables;
+    private int size;
 
     Environment() {
         enclosing = null;
@@ -15,59 +20,92 @@ public class Environment {
         this.enclosing = enclosing;
     }
 
-    void define(String name, Object value, TokenType type) {
-        if (values.containsKey(name)) {
-            throw new RuntimeError(new Token(type, name, type, 0),
-                    "Variable '" + name + "' is already defined in this scope.");
+    void define(Token name, Object value, TokenType type) {
+        define(name, value, type, true);
+    }
+
+    void define(Token name, Object value, TokenType type, boolean mutable) {
+        if (find(name.symbol) != null) {
+            throw new RuntimeError(name,
+                    "Variable '" + name.lexeme + "' is already defined in this scope.");
         }
 
         Environment current = this.enclosing;
         while (current != null) {
-            if (current.values.containsKey(name)) {
-                throw new RuntimeError(new Token(type, name, type, 0),
-                        "Variable '" + name + "' shadows variable from an outer scope.");
+            if (current.find(name.symbol) != null) {
+                throw new RuntimeError(name,
+                        "Variable '" + name.lexeme + "' shadows variable from an outer scope.");
             }
             current = current.enclosing;
         }
-        values.put(name, new Variable(type, value));
+        put(name.symbol, new Variable(type, value, mutable));
     }
 
-    Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme).getValue();
+    // Defines a private copy of an outer variable, bypassing the shadowing check.
+    void shadow(Token name, Object value, TokenType type) {
+        put(name.symbol, new Variable(type, value));
+    }
+
+    void undefine(Token name) {
+        if (find(name.symbol) == null) return;
+
+        int mask = keys.length - 1;
+        int hole = slot(name.symbol);
+        // Shift later members of the probe run back so lookups still find them.
+        for (int i = (hole + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = (keys[i] - 1) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                keys[hole] = keys[i];
+                variables[hole] = variables[i];
+                hole = i;
+            }
         }
+        keys[hole] = 0;
+        variables[hole] = null;
+        size--;
+    }
 
-        if (enclosing != null)
-            return enclosing.get(name);
+    // Reads never copy a shared variable, only lookup and assign do.
+    Object get(Token name) {
+        Environment environment = this;
+        while (environment != null) {
+            Variable variable = environment.find(name.symbol);
+            if (variable != null) {
+                return variable.getValue();
+            }
+            environment = environment.enclosing;
+        }
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
-    @SuppressWarnings("incomplete-switch")
-    void assign(Token name, Object value) {
+    Variable lookup(Token name) {
         Environment environment = this;
         while (environment != null) {
-            if (environment.values.containsKey(name.lexeme)) {
-
-                Variable existingVar = environment.values.get(name.lexeme);
-
+            Variable variable = environment.find(name.symbol);
+            if (variable != null) {
+                return variable.isShared() ? environment.own(name.symbol) : variable;
+            }
+            environment = environment.enclosing;
+        }
 
-                TokenType expectedType = existingVar.getType();
+        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+    }
 
-                boolean typeMatch = false;
-                if (expectedType == TokenType.INT && value instanceof Integer) {
-                    typeMatch = true;
-                } else if (expectedType == TokenType.FLOAT && value instanceof Double) {
-                    typeMatch = true;
-                } else if (expectedType == TokenType.CHAR && value instanceof Character) {
-                    typeMatch = true;
-                } else if (expectedType == TokenType.STRING && value instanceof String) {
-                    typeMatch = true;
-                } else if (expectedType == TokenType.BOOL && value instanceof Boolean) {
-                    typeMatch = true;
+    void assign(Token name, Object value) {
+        Environment environment = this;
+        while (environment != null) {
+            Variable existingVar = environment.find(name.symbol);
+            if (existingVar != null) {
+                if (!existingVar.isMutable()) {
+                    throw new RuntimeError(name, "Cannot assign to constant '" + name.lexeme + "'.");
                 }
+                if (existingVar.isShared()) {
+                    existingVar = environment.own(name.symbol);
+                }
+                TokenType expectedType = existingVar.getType();
 
-                if (!typeMatch) {
+                if (!accepts(expectedType, value)) {
 
                     String valueStr = value == null ? "null" : value.toString();
                     if (value instanceof Boolean) valueStr = valueStr.toUpperCase();
@@ -80,7 +118,7 @@ public class Environment {
                                     " to variable '" + name.lexeme + "' of type " + expectedType + ".");
                 }
 
-                environment.values.put(name.lexeme, new Variable(expectedType, value));
+                existingVar.setValue(value);
                 return;
             }
             environment = environment.enclosing;
@@ -88,4 +126,109 @@ public class Environment {
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "' during assignment attempt.");
     }
-}
\ No newline at end of file
+
+    // A deep copy of this scope whose variables are all shared, for a snapshot.
+    Environment freeze() {
+        Environment frozen = new Environment(enclosing);
+        if (keys != null) {
+            frozen.keys = keys.clone();
+            frozen.variables = new Variable[variables.length];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) frozen.variables[i] = variables[i].copy(true);
+            }
+            frozen.size = size;
+        }
+        return frozen;
+    }
+
+    // A scope over the same shared variables; each is copied on its first write.
+    Environment fork() {
+        Environment fork = new Environment(enclosing);
+        if (keys != null) {
+            fork.keys = keys.clone();
+            fork.variables = variables.clone();
+            fork.size = size;
+        }
+        return fork;
+    }
+
+    // Materializes pending PULONG appends here and in the enclosing scopes, so
+    // threads that only read these variables never race to do it themselves.
+    void settle() {
+        for (Environment environment = this; environment != null; environment = environment.enclosing) {
+            environment.forEach((variable, symbol) -> variable.getValue());
+        }
+    }
+
+    void forEach(ObjIntConsumer<Variable> action) {
+        if (keys == null) return;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) action.accept(variables[i], keys[i] - 1);
+        }
+    }
+
+    private Variable own(int symbol) {
+        int at = slot(symbol);
+        variables[at] = variables[at].copy(false);
+        return variables[at];
+    }
+
+    static boolean accepts(TokenType type, Object value) {
+        if (type == TokenType.INT) return Arithmetic.isInteger(value);
+        if (type == TokenType.FLOAT) return value instanceof Double;
+        if (type == TokenType.CHAR) return value instanceof Character;
+        if (type == TokenType.STRING) return value instanceof String;
+        if (type == TokenType.BOOL) return value instanceof Boolean;
+        return false;
+    }
+
+    // Empties a pooled call frame so it can be reused by the next call.
+    void clear() {
+        if (size == 0) return;
+        Arrays.fill(keys, 0);
+        Arrays.fill(variables, null);
+        size = 0;
+    }
+
+    private Variable find(int symbol) {
+        if (keys == null) return null;
+        int mask = keys.length - 1;
+        for (int i = symbol & mask; ; i = (i + 1) & mask) {
+            int key = keys[i];
+            if (key == symbol + 1) return variables[i];
+            if (key == 0) return null;
+        }
+    }
+
+    private int slot(int symbol) {
+        int mask = keys.length - 1;
+        int i = symbol & mask;
+        while (keys[i] != 0 && keys[i] != symbol + 1) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private void put(int symbol, Variable variable) {
+        if (keys == null) {
+            keys = new int[8];
+            variables = new Variable[8];
+        } else if ((size + 1) * 2 > keys.length) {
+            int[] oldKeys = keys;
+            Variable[] oldVariables = variables;
+            keys = new int[oldKeys.length * 2];
+            variables = new Variable[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int at = slot(oldKeys[i] - 1);
+                    keys[at] = oldKeys[i];
+                    variables[at] = oldVariables[i];
+                }
+            }
+        }
+        int at = slot(symbol);
+        if (keys[at] == 0) size++;
+        keys[at] = symbol + 1;
+        variables[at] = variable;
+    }
+}
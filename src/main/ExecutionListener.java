@@ -0,0 +1,26 @@
+package main;
+
+// Callbacks from an InstrumentedInterpreter, for coverage, tracing and
+// debugging tools. Every method defaults to doing nothing. The blocks of a
+// DUNGAN call in from their own threads at the same time.
+public interface ExecutionListener {
+    default void enterStatement(Stmt stmt) {
+    }
+
+    // Also called when the statement ends in a runtime error or IBALIK.
+    default void exitStatement(Stmt stmt) {
+    }
+
+    // After a variable or array element is assigned, read by DAWAT or appended to.
+    default void assigned(Token name, Object value) {
+    }
+
+    // `branch` is 0 for the KUNG branch, i for the i-th KUNG DILI, one past the
+    // last KUNG DILI for KUNG WALA, and -1 when no branch ran.
+    default void branchTaken(Stmt.If stmt, int branch) {
+    }
+
+    // Before each run of an ALANG SA body.
+    default void loopIteration(Stmt.For loop) {
+    }
+}
@@ -17,6 +17,22 @@ abstract class Expr {
         R visitUnaryExpr(Unary expr);
 
         R visitVariableExpr(Variable expr);
+
+        R visitInvariantExpr(Invariant expr);
+
+        R visitIndexExpr(Index expr);
+
+        R visitIndexAssignExpr(IndexAssign expr);
+
+        R visitLengthExpr(Length expr);
+
+        R visitCallExpr(Call expr);
+
+        R visitIncrementExpr(Increment expr);
+
+        R visitCompareConstantExpr(CompareConstant expr);
+
+        R visitRemainderExpr(Remainder expr);
     }
 
     static class Assign extends Expr {
@@ -32,6 +48,7 @@ abstract class Expr {
 
         final Token name;
         final Expr value;
+        boolean verified;
     }
 
     static class Binary extends Expr {
@@ -49,6 +66,7 @@ abstract class Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        boolean verified;
     }
 
     static class Grouping extends Expr {
@@ -107,6 +125,7 @@ abstract class Expr {
 
         final Token operator;
         final Expr right;
+        boolean verified;
     }
 
     static class Variable extends Expr {
@@ -120,6 +139,149 @@ abstract class Expr {
         }
 
         final Token name;
+        // The value of a PIRMI known before the program runs, which the
+        // optimizer puts in place of the read. Set by the checker.
+        Literal constant;
+    }
+
+    static class Invariant extends Expr {
+        Invariant(Expr expression, int slot) {
+            this.expression = expression;
+            this.slot = slot;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitInvariantExpr(this);
+        }
+
+        final Expr expression;
+        final int slot;
+    }
+
+    static class Index extends Expr {
+        Index(Token name, Expr index) {
+            this.name = name;
+            this.index = index;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndexExpr(this);
+        }
+
+        final Token name;
+        final Expr index;
+    }
+
+    static class IndexAssign extends Expr {
+        IndexAssign(Token name, Expr index, Expr value) {
+            this.name = name;
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndexAssignExpr(this);
+        }
+
+        final Token name;
+        final Expr index;
+        final Expr value;
+        boolean verified;
+    }
+
+    static class Length extends Expr {
+        Length(Token name) {
+            this.name = name;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitLengthExpr(this);
+        }
+
+        final Token name;
+    }
+
+    static class Call extends Expr {
+        Call(Token name, List<Expr> arguments) {
+            this.name = name;
+            this.arguments = arguments;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitCallExpr(this);
+        }
+
+        final Token name;
+        final List<Expr> arguments;
+        boolean verified;
+    }
+
+    // Fused forms produced by the optimizer from checked trees. Each keeps the
+    // expression it replaces, which later passes can still inspect.
+
+    // `name = name + delta` or `name = name - delta` with a numeric literal delta.
+    static class Increment extends Expr {
+        Increment(Token name, Object delta, Expr original) {
+            this.name = name;
+            this.delta = delta;
+            this.original = original;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIncrementExpr(this);
+        }
+
+        final Token name;
+        final Object delta;
+        final Expr original;
+    }
+
+    // `name <op> constant` for a comparison or equality operator.
+    static class CompareConstant extends Expr {
+        CompareConstant(Token name, TokenType operator, Object constant, Expr original) {
+            this.name = name;
+            this.operator = operator;
+            this.constant = constant;
+            this.original = original;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitCompareConstantExpr(this);
+        }
+
+        final Token name;
+        final TokenType operator;
+        final Object constant;
+        final Expr original;
+    }
+
+    // `name % divisor == remainder` or `!=`, on integers with a non-zero divisor.
+    static class Remainder extends Expr {
+        Remainder(Token name, int divisor, boolean equal, int remainder, Expr original) {
+            this.name = name;
+            this.divisor = divisor;
+            this.equal = equal;
+            this.remainder = remainder;
+            this.original = original;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitRemainderExpr(this);
+        }
+
+        final Token name;
+        final int divisor;
+        final boolean equal;
+        final int remainder;
+        final Expr original;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
@@ -0,0 +1,46 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Where DAWAT reads its lines from. Each Interpreter has its own source, so one
+// parsed program can be run against many inputs in the same JVM.
+@FunctionalInterface
+public interface InputSource {
+    int FILE_BUFFER = 1 << 16;
+
+    InputSource STDIN = reader(new BufferedReader(new InputStreamReader(System.in)));
+
+    // The next line, or null once the input is exhausted.
+    String readLine() throws IOException;
+
+    static InputSource stdin() {
+        return STDIN;
+    }
+
+    static InputSource reader(BufferedReader reader) {
+        return reader::readLine;
+    }
+
+    static InputSource file(Path path) throws IOException {
+        return reader(new BufferedReader(
+                new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8), FILE_BUFFER));
+    }
+
+    static InputSource lines(List<String> lines) {
+        Iterator<String> iterator = lines.iterator();
+        return () -> iterator.hasNext() ? iterator.next() : null;
+    }
+
+    // Calls the generator for each line; it returns null to end the input.
+    static InputSource generator(Supplier<String> generator) {
+        return generator::get;
+    }
+}
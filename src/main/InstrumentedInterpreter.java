@@ -0,0 +1,96 @@
+package main;
+
+import java.io.PrintStream;
+
+// An Interpreter that reports to an ExecutionListener. The hooks live in this
+// subclass rather than behind checks in Interpreter, so a run without a
+// listener executes exactly the same code as before.
+//
+// Counted loops and switched KUNG chains take the generic path here, so every
+// iteration and branch is reported and no iteration runs on another thread.
+// DUNGAN blocks still run at the same time, each on its own instrumented
+// interpreter reporting to the same listener.
+public class InstrumentedInterpreter extends Interpreter {
+    private final ExecutionListener listener;
+
+    public InstrumentedInterpreter(ExecutionListener listener) {
+        this(new Environment(), System.out, System.err, listener);
+    }
+
+    InstrumentedInterpreter(Environment globals, PrintStream out, PrintStream err, ExecutionListener listener) {
+        super(globals, out, err);
+        this.listener = listener;
+    }
+
+    @Override
+    Interpreter sibling(PrintStream out, PrintStream err) {
+        return new InstrumentedInterpreter(globals, out, err, listener);
+    }
+
+    @Override
+    void execute(Stmt stmt) {
+        listener.enterStatement(stmt);
+        try {
+            super.execute(stmt);
+        } finally {
+            listener.exitStatement(stmt);
+        }
+    }
+
+    @Override
+    void branchTaken(Stmt.If stmt, int branch) {
+        listener.branchTaken(stmt, branch);
+    }
+
+    @Override
+    void loopIterated(Stmt.For stmt) {
+        listener.loopIteration(stmt);
+    }
+
+    @Override
+    public Object visitCountedForStmt(Stmt.CountedFor stmt) {
+        return visitForStmt(stmt.loop);
+    }
+
+    @Override
+    public Object visitSwitchStmt(Stmt.Switch stmt) {
+        return visitIfStmt(stmt.chain);
+    }
+
+    @Override
+    public Object visitAssignExpr(Expr.Assign expr) {
+        Object value = super.visitAssignExpr(expr);
+        listener.assigned(expr.name, value);
+        return value;
+    }
+
+    @Override
+    public Object visitIncrementExpr(Expr.Increment expr) {
+        Object value = super.visitIncrementExpr(expr);
+        listener.assigned(expr.name, value);
+        return value;
+    }
+
+    @Override
+    public Object visitIndexAssignExpr(Expr.IndexAssign expr) {
+        Object value = super.visitIndexAssignExpr(expr);
+        listener.assigned(expr.name, value);
+        return value;
+    }
+
+    @Override
+    public Object visitAppendStmt(Stmt.Append stmt) {
+        super.visitAppendStmt(stmt);
+        listener.assigned(stmt.name, valueOf(stmt.name));
+        return null;
+    }
+
+    @Override
+    public Object visitScanStmt(Stmt.Scan stmt) {
+        super.visitScanStmt(stmt);
+        for (Token identifier : stmt.identifiers) {
+            listener.assigned(identifier, valueOf(identifier));
+        }
+        return null;
+    }
+}
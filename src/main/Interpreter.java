@@ -1,12 +1,23 @@
 package main;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 import java.lang.String;
 
 import main.Expr.Assign;
 import main.Expr.Binary;
 import main.Expr.Grouping;
+import main.Expr.Invariant;
 import main.Expr.Literal;
 import main.Expr.Logical;
 import main.Expr.Unary;
@@ -21,129 +32,246 @@ import main.Stmt.Int;
 import main.Stmt.Print;
 import main.Stmt.Scan;
 import main.Stmt.For;
-import java.util.Scanner;
+import main.Stmt.CountedFor;
 import java.util.stream.Collectors;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private boolean hasDisplay = false;
+    // Package-private where compiled closures (see Compiler) work on them directly.
+    final Environment globals;
+    Environment environment;
+    private final PrintStream out;
+    private final PrintStream err;
+    final OutputBuffer text;
+    boolean hasDisplay = false;
+    private InputSource input = InputSource.stdin();
+    // A lazy parser whose branches must all parse before the run can succeed.
+    private Parser lazy;
+
+    // Independent counted loops with fewer iterations than this stay sequential.
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    static final Object UNSET = new Object();
+    Object[] hoisted = new Object[0];
+
+    // Functions by symbol id, and the call frames they run in. Frames are pooled
+    // per call depth and only ever enclose the globals, so a call allocates no
+    // Environment once the pool has grown to the deepest recursion seen.
+    private Stmt.Function[] functions = new Stmt.Function[0];
+    private Environment[] frames = new Environment[16];
+    private int depth = 0;
+    private final Return returning = new Return();
+
+    // Resumes from a snapshot. The globals are shared with the snapshot and with
+    // every other fork of it until this interpreter writes them.
+    Interpreter(Snapshot snapshot, PrintStream out, PrintStream err) {
+        this(snapshot.globals.fork(), out, err);
+        this.functions = snapshot.functions.clone();
+        this.hasDisplay = snapshot.hasDisplay;
+    }
+
+    void setInput(InputSource input) {
+        this.input = input;
+    }
+
+    void validateWith(Parser parser) {
+        this.lazy = parser;
+    }
+
+    Snapshot snapshot(int position) {
+        return new Snapshot(position, globals.freeze(), functions.clone(), hasDisplay);
+    }
+
+    public Interpreter() {
+        this(new Environment(), System.out, System.err);
+    }
+
+    Interpreter(Environment globals, PrintStream out, PrintStream err) {
+        this.globals = globals;
+        this.environment = globals;
+        this.out = out;
+        this.err = err;
+        this.text = new OutputBuffer(out);
+    }
 
     public void interpret(List<Stmt> statements) {
+        interpret(statements, null, 0, -1, null);
+    }
+
+    // Runs the top-level statements from `from` on, handing a snapshot to
+    // `checkpoint` just before statement `at` runs. `compiled`, when not null,
+    // holds the statements compiled to closures, which run in their place.
+    void interpret(List<Stmt> statements, Compiler.Action[] compiled, int from, int at,
+                   Consumer<Snapshot> checkpoint) {
         try {
-            for (Stmt statement : statements) {
-                execute(statement);
+            defineFunctions(statements);
+            for (int i = from; i < statements.size(); i++) {
+                if (i == at) {
+                    checkpoint.accept(snapshot(i));
+                }
+                if (compiled != null) {
+                    compiled[i].run(this);
+                } else {
+                    execute(statements.get(i));
+                }
+            }
+            if (at == statements.size()) {
+                checkpoint.accept(snapshot(at));
+            }
+            if (lazy != null) {
+                lazy.validate();
             }
             if (!hasDisplay) {
-                System.out.println("No Error.");
+                out.println("No Error.");
             }
             if (hasDisplay) {
-                System.out.println("\nNo Error.");
+                out.println("\nNo Error.");
             }
         } catch (RuntimeError error) {
             Main.runtimeError(error);
+        } catch (Parser.ParseError error) {
+            // A branch parsed lazily, already reported as a syntax or type error.
         } catch (Exception e) {
-            System.err.println("An unexpected error occurred:");
-            e.printStackTrace();
+            err.println("An unexpected error occurred:");
+            e.printStackTrace(err);
         }
     }
 
 
 
+    void interpretStatements(List<Stmt> statements) {
+        try {
+            defineFunctions(statements);
+            for (Stmt statement : statements) {
+                execute(statement);
+            }
+        } catch (RuntimeError error) {
+            Main.runtimeError(error);
+        }
+    }
+
+    boolean takeDisplay() {
+        boolean displayed = hasDisplay;
+        hasDisplay = false;
+        return displayed;
+    }
+
     @Override
     public Object visitBinaryExpr(Binary expr) {
-        Object left = evaluate(expr.left);
-        Object right = evaluate(expr.right);
+        return binary(expr, evaluate(expr.left), evaluate(expr.right));
+    }
 
+    Object binary(Binary expr, Object left, Object right) {
         switch (expr.operator.type) {
             case GREATER_THAN:
-                checkNumberOperands(expr.operator, left, right);
                 if (left instanceof Integer && right instanceof Integer) {
                     return (int) left > (int) right;
-                } else {
+                }
+                if (!expr.verified) checkNumberOperands(expr.operator, left, right);
+                if (left instanceof Double) {
                     return (double) left > (double) right;
                 }
+                return Arithmetic.compare(left, right) > 0;
             case GREATER_THAN_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
                 if (left instanceof Integer && right instanceof Integer) {
                     return (int) left >= (int) right;
-                } else {
+                }
+                if (!expr.verified) checkNumberOperands(expr.operator, left, right);
+                if (left instanceof Double) {
                     return (double) left >= (double) right;
                 }
+                return Arithmetic.compare(left, right) >= 0;
             case LESS_THAN:
-                checkNumberOperands(expr.operator, left, right);
                 if (left instanceof Integer && right instanceof Integer) {
                     return (int) left < (int) right;
-                } else {
+                }
+                if (!expr.verified) checkNumberOperands(expr.operator, left, right);
+                if (left instanceof Double) {
                     return (double) left < (double) right;
                 }
+                return Arithmetic.compare(left, right) < 0;
             case LESS_THAN_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
                 if (left instanceof Integer && right instanceof Integer) {
                     return (int) left <= (int) right;
-                } else {
+                }
+                if (!expr.verified) checkNumberOperands(expr.operator, left, right);
+                if (left instanceof Double) {
                     return (double) left <= (double) right;
                 }
+                return Arithmetic.compare(left, right) <= 0;
             case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-
                 if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left - (int) right;
-                } else {
+                    long difference = (long) (int) left - (int) right;
+                    if (difference == (int) difference) return (int) difference;
+                    return difference;
+                }
+                if (!expr.verified) checkNumberOperands(expr.operator, left, right);
+                if (left instanceof Double) {
                     return (double) left - (double) right;
                 }
+                return Arithmetic.subtract(left, right);
             case SLASH:
-                checkNumberOperands(expr.operator, left, right);
                 if (left instanceof Integer && right instanceof Integer) {
                     if ((int) right == 0) {
                         throw new RuntimeError(expr.operator, "Cannot divide by zero.");
-                    } else {
-                        return (int) left / (int) right;
                     }
-                } else {
+                    // MIN_VALUE / -1 is the one int quotient that overflows.
+                    if ((int) right == -1) return Arithmetic.negate(left);
+                    return (int) left / (int) right;
+                }
+                if (!expr.verified) checkNumberOperands(expr.operator, left, right);
+                if (left instanceof Double) {
                     if ((double) right == 0) {
                         throw new RuntimeError(expr.operator, "Cannot divide by zero.");
                     } else {
                         return (double) left / (double) right;
                     }
                 }
+                if (Arithmetic.isZero(right)) {
+                    throw new RuntimeError(expr.operator, "Cannot divide by zero.");
+                }
+                return Arithmetic.divide(left, right);
             case STAR:
-                checkNumberOperands(expr.operator, left, right);
                 if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left * (int) right;
-                } else {
+                    long product = (long) (int) left * (int) right;
+                    if (product == (int) product) return (int) product;
+                    return product;
+                }
+                if (!expr.verified) checkNumberOperands(expr.operator, left, right);
+                if (left instanceof Double) {
                     return (double) left * (double) right;
                 }
+                return Arithmetic.multiply(left, right);
             case PLUS:
-                checkNumberOperands(expr.operator, left, right);
                 if (left instanceof Integer && right instanceof Integer) {
-                    return (int) left + (int) right;
-                } else if (left instanceof Double && right instanceof Double) {
+                    long sum = (long) (int) left + (int) right;
+                    if (sum == (int) sum) return (int) sum;
+                    return sum;
+                }
+                if (!expr.verified) checkNumberOperands(expr.operator, left, right);
+                if (left instanceof Double) {
                     return (double) left + (double) right;
                 }
-                break;
+                return Arithmetic.add(left, right);
             case AMPERSAND:
-                String leftValue = "";
-                String rightValue = "";
-
+                int mark = text.length();
                 if (left != null) {
-                    leftValue = stringify(left);
+                    text.append(left);
                 }
-
                 if (right != null) {
-                    rightValue = stringify(right);
+                    text.append(right);
                 }
-
-                return leftValue + rightValue;
+                return text.take(mark);
 
             case MODULO:
-                checkNumberOperands(expr.operator, left, right);
                 if (left instanceof Integer && right instanceof Integer) {
                     return (int) left % (int) right;
-                } else {
+                }
+                if (!expr.verified) checkNumberOperands(expr.operator, left, right);
+                if (left instanceof Double) {
                     return (double) left % (double) right;
                 }
+                return Arithmetic.remainder(left, right);
             case EQUAL_EQUAL:
                 return isEqual(left, right);
             case NOT_EQUAL:
@@ -165,27 +293,51 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return expr.value;
     }
 
+    @Override
+    public Object visitInvariantExpr(Invariant expr) {
+        Object value = hoisted[expr.slot];
+        if (value == UNSET) {
+            value = evaluate(expr.expression);
+            hoisted[expr.slot] = value;
+        }
+        return value;
+    }
+
+    void resetInvariants(List<Invariant> invariants) {
+        for (Invariant invariant : invariants) {
+            if (invariant.slot >= hoisted.length) {
+                int size = hoisted.length;
+                hoisted = Arrays.copyOf(hoisted, Math.max(invariant.slot + 1, size * 2));
+                Arrays.fill(hoisted, size, hoisted.length, UNSET);
+            }
+            hoisted[invariant.slot] = UNSET;
+        }
+    }
+
     @Override
     public Object visitUnaryExpr(Unary expr) {
-        Object right = evaluate(expr.right);
+        return unary(expr, evaluate(expr.right));
+    }
 
+    Object unary(Unary expr, Object right) {
         switch (expr.operator.type) {
             case NOT:
                 return !isTruthy(right);
             case MINUS:
-                checkNumberOperand(expr.operator, right);
-                if (right instanceof Integer) {
+                if (right instanceof Integer && (int) right != Integer.MIN_VALUE) {
                     return -(int) right;
-                } else {
+                }
+                if (!expr.verified) checkNumberOperand(expr.operator, right);
+                if (right instanceof Double) {
                     return -(double) right;
                 }
+                return Arithmetic.negate(right);
             case PLUS:
-                checkNumberOperand(expr.operator, right);
-                if (right instanceof Integer) {
-                    return +(int) right;
-                } else {
+                if (!expr.verified) checkNumberOperand(expr.operator, right);
+                if (right instanceof Double) {
                     return +(double) right;
                 }
+                return right;
             default:
                 break;
         }
@@ -197,8 +349,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return expr.accept(this);
     }
 
-    private void execute(Stmt stmt) {
-        if (stmt instanceof Stmt.Print) {
+    void execute(Stmt stmt) {
+        if (stmt instanceof Stmt.Print || stmt instanceof Stmt.PrintConcat) {
             hasDisplay = true;
         }
 
@@ -207,20 +359,40 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     void executeBlock(List<Stmt> statements, Environment environment) {
         Environment previous = this.environment;
+        int mark = text.length();
         try {
             this.environment = environment;
             for (Stmt statement : statements) {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            System.err.println("[Runtime Error in block] " + error.getMessage());
+            // Drop the text of a print the error interrupted.
+            text.reset(mark);
+            err.println("[Runtime Error in block] " + error.getMessage());
+
+        } finally {
+            this.environment = previous;
+        }
+    }
+
+    void executeBlock(Compiler.Action[] actions, Environment environment) {
+        Environment previous = this.environment;
+        int mark = text.length();
+        try {
+            this.environment = environment;
+            for (Compiler.Action action : actions) {
+                action.run(this);
+            }
+        } catch (RuntimeError error) {
+            text.reset(mark);
+            err.println("[Runtime Error in block] " + error.getMessage());
 
         } finally {
             this.environment = previous;
         }
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null)
             return false;
         if (object instanceof Boolean)
@@ -228,7 +400,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return true;
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null)
             return true;
         if (a == null)
@@ -238,13 +410,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     }
 
     private void checkNumberOperand(Token operator, Object operand) {
-        if (operand instanceof Double || operand instanceof Integer)
+        if (operand instanceof Double || Arithmetic.isInteger(operand))
             return;
         throw new RuntimeError(operator, "Operand must be an integer or a float number.");
     }
 
     private void checkNumberOperands(Token operator, Object left, Object right) {
-        if ((left instanceof Integer && right instanceof Integer)
+        if ((Arithmetic.isInteger(left) && Arithmetic.isInteger(right))
                 || (left instanceof Double && right instanceof Double))
             return;
         throw new RuntimeError(operator, "Operand must be an integer or a float number.");
@@ -257,28 +429,29 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     }
 
     private String stringify(Object value) {
-        if (value == null) return "null";
-
-        if (value instanceof Boolean) {
-            return (Boolean) value ? "OO" : "DILI";
-        }
-
-        return value.toString();
+        int mark = text.length();
+        text.append(value);
+        return text.take(mark);
     }
 
     @Override
     public Void visitPrintStmt(Print stmt) {
-        Object value = evaluate(stmt.expression);
-        System.out.print(stringify(value));
+        display(evaluate(stmt.expression));
         return null;
     }
 
+    void display(Object value) {
+        int mark = text.length();
+        text.append(value);
+        text.print(mark);
+    }
+
     @Override
     public Object visitIntStmt(Int stmt) {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
-            if (!(value instanceof Integer)) {
+            if (!stmt.verified && !Arithmetic.isInteger(value)) {
                 Object v = value;
                 if (value instanceof Boolean) {
                     v = value.toString().toUpperCase();
@@ -286,7 +459,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
                 throw new RuntimeError(stmt.name, "Value '" + v + "' is not of type Integer.");
             }
         }
-        environment.define(stmt.name.lexeme, value, TokenType.INT);
+        environment.define(stmt.name, value, TokenType.INT, !stmt.constant);
         return null;
     }
 
@@ -295,7 +468,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
-            if (!(value instanceof Double)) {
+            if (!stmt.verified && !(value instanceof Double)) {
                 Object v = value;
                 if (value instanceof Boolean) {
                     v = value.toString().toUpperCase();
@@ -303,7 +476,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
                 throw new RuntimeError(stmt.name, "Value '" + v + "' is not of type Float.");
             }
         }
-        environment.define(stmt.name.lexeme, value, TokenType.FLOAT);
+        environment.define(stmt.name, value, TokenType.FLOAT, !stmt.constant);
         return null;
     }
 
@@ -312,7 +485,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
-            if (!(value instanceof Character)) {
+            if (!stmt.verified && !(value instanceof Character)) {
                 Object v = value;
                 if (value instanceof Boolean) {
                     v = value.toString().toUpperCase();
@@ -320,7 +493,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
                 throw new RuntimeError(stmt.name, "Value '" + v + "' is not of type Character.");
             }
         }
-        environment.define(stmt.name.lexeme, value, TokenType.CHAR);
+        environment.define(stmt.name, value, TokenType.CHAR, !stmt.constant);
         return null;
     }
 
@@ -329,14 +502,137 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
-            if (!(value instanceof Boolean)) {
+            if (!stmt.verified && !(value instanceof Boolean)) {
                 throw new RuntimeError(stmt.name, "Value '" + value + "' is not of type Boolean.");
             }
         }
-        environment.define(stmt.name.lexeme, value, TokenType.BOOL);
+        environment.define(stmt.name, value, TokenType.BOOL, !stmt.constant);
         return null;
     }
 
+    @Override
+    public Object visitTextStmt(Stmt.Text stmt) {
+        Object value = null;
+        if (stmt.initializer != null) {
+            value = evaluate(stmt.initializer);
+            if (!stmt.verified && !(value instanceof String)) {
+                throw new RuntimeError(stmt.name, "Value '" + stringify(value) + "' is not of type String.");
+            }
+        }
+        environment.define(stmt.name, value, TokenType.STRING, !stmt.constant);
+        return null;
+    }
+
+    @Override
+    public Object visitAppendStmt(Stmt.Append stmt) {
+        main.Variable variable = environment.lookup(stmt.name);
+        // All parts first, so one that fails leaves the variable as it was.
+        Object[] values = new Object[stmt.parts.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evaluate(stmt.parts.get(i));
+        }
+        for (Object value : values) {
+            append(variable, value);
+        }
+        return null;
+    }
+
+    void append(main.Variable variable, Object value) {
+        if (value instanceof String) {
+            variable.append((String) value);
+        } else if (value != null) {
+            int mark = text.length();
+            text.append(value);
+            text.appendTo(variable, mark);
+        }
+    }
+
+    @Override
+    public Object visitPrintConcatStmt(Stmt.PrintConcat stmt) {
+        // A part may print while the earlier ones wait in the buffer; its text
+        // goes out first, as it did when the parts were joined before printing.
+        int mark = text.length();
+        for (Expr part : stmt.parts) {
+            Object value = evaluate(part);
+            if (value != null) {
+                text.append(value);
+            }
+        }
+        text.print(mark);
+        return null;
+    }
+
+    @Override
+    public Object visitIncrementExpr(Expr.Increment expr) {
+        main.Variable variable = environment.lookup(expr.name);
+        Object current = variable.getValue();
+        Object value;
+        if (current instanceof Integer && expr.delta instanceof Integer) {
+            long sum = (long) (int) current + (int) expr.delta;
+            value = sum == (int) sum ? (Object) (int) sum : (Object) sum;
+        } else if (expr.delta instanceof Integer) {
+            value = Arithmetic.add(current, expr.delta);
+        } else {
+            value = (double) current + (double) expr.delta;
+        }
+        variable.setValue(value);
+        return value;
+    }
+
+    @Override
+    public Object visitCompareConstantExpr(Expr.CompareConstant expr) {
+        Object value = environment.get(expr.name);
+        if (expr.operator == TokenType.EQUAL_EQUAL) return isEqual(value, expr.constant);
+        if (expr.operator == TokenType.NOT_EQUAL) return !isEqual(value, expr.constant);
+
+        if (value instanceof Integer && expr.constant instanceof Integer) {
+            int left = (int) value, right = (int) expr.constant;
+            switch (expr.operator) {
+                case LESS_THAN:
+                    return left < right;
+                case LESS_THAN_EQUAL:
+                    return left <= right;
+                case GREATER_THAN:
+                    return left > right;
+                default:
+                    return left >= right;
+            }
+        }
+        if (value instanceof Double) {
+            double left = (double) value, right = (double) expr.constant;
+            switch (expr.operator) {
+                case LESS_THAN:
+                    return left < right;
+                case LESS_THAN_EQUAL:
+                    return left <= right;
+                case GREATER_THAN:
+                    return left > right;
+                default:
+                    return left >= right;
+            }
+        }
+        int comparison = Arithmetic.compare(value, expr.constant);
+        switch (expr.operator) {
+            case LESS_THAN:
+                return comparison < 0;
+            case LESS_THAN_EQUAL:
+                return comparison <= 0;
+            case GREATER_THAN:
+                return comparison > 0;
+            default:
+                return comparison >= 0;
+        }
+    }
+
+    @Override
+    public Object visitRemainderExpr(Expr.Remainder expr) {
+        Object value = environment.get(expr.name);
+        boolean matches = value instanceof Integer
+                ? (int) value % expr.divisor == expr.remainder
+                : Arithmetic.remainder(value, expr.divisor).equals(expr.remainder);
+        return matches == expr.equal;
+    }
+
     @Override
     public Object visitVariableExpr(Variable expr) {
         return environment.get(expr.name);
@@ -345,10 +641,281 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     @Override
     public Object visitAssignExpr(Assign expr) {
         Object value = evaluate(expr.value);
-        environment.assign(expr.name, value);
+        if (expr.verified) {
+            environment.lookup(expr.name).setValue(value);
+        } else {
+            environment.assign(expr.name, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Object visitArrayStmt(Stmt.Array stmt) {
+        Object size = evaluate(stmt.size);
+        if (!(size instanceof Integer) || (Integer) size < 0) {
+            throw new RuntimeError(stmt.name, "Array size must be a non-negative integer.");
+        }
+
+        int length = (Integer) size;
+        Object array;
+        switch (stmt.kind) {
+            case INT:
+                array = new int[length];
+                break;
+            case FLOAT:
+                array = new double[length];
+                break;
+            case CHAR:
+                array = new char[length];
+                break;
+            default:
+                array = new boolean[length];
+                break;
+        }
+        environment.define(stmt.name, array, TokenType.ARRAY);
+        return null;
+    }
+
+    @Override
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object array = environment.get(expr.name);
+        return element(expr.name, array, evaluate(expr.index));
+    }
+
+    Object element(Token name, Object array, Object position) {
+        int index = index(name, array, position);
+        if (array instanceof int[]) return ((int[]) array)[index];
+        if (array instanceof double[]) return ((double[]) array)[index];
+        if (array instanceof char[]) return ((char[]) array)[index];
+        return ((boolean[]) array)[index];
+    }
+
+    @Override
+    public Object visitIndexAssignExpr(Expr.IndexAssign expr) {
+        // lookup rather than get, so a forked array is copied before it is written.
+        Object array = environment.lookup(expr.name).getValue();
+        Object position = evaluate(expr.index);
+        return store(expr, array, position, evaluate(expr.value));
+    }
+
+    Object store(Expr.IndexAssign expr, Object array, Object position, Object value) {
+        int index = index(expr.name, array, position);
+
+        if (array instanceof int[] && value instanceof Integer) {
+            ((int[]) array)[index] = (Integer) value;
+        } else if (array instanceof int[] && Arithmetic.isInteger(value)) {
+            throw new RuntimeError(expr.name, "Value " + stringify(value) + " is too large for an element of array '"
+                    + expr.name.lexeme + "'.");
+        } else if (array instanceof double[] && (expr.verified || value instanceof Double)) {
+            ((double[]) array)[index] = (Double) value;
+        } else if (array instanceof char[] && (expr.verified || value instanceof Character)) {
+            ((char[]) array)[index] = (Character) value;
+        } else if (array instanceof boolean[] && (expr.verified || value instanceof Boolean)) {
+            ((boolean[]) array)[index] = (Boolean) value;
+        } else {
+            throw new RuntimeError(expr.name, "Type mismatch: Cannot assign value " + stringify(value)
+                    + " to an element of array '" + expr.name.lexeme + "'.");
+        }
         return value;
     }
 
+    @Override
+    public Object visitLengthExpr(Expr.Length expr) {
+        return length(expr.name, environment.get(expr.name));
+    }
+
+    int length(Token name, Object array) {
+        if (array instanceof int[]) return ((int[]) array).length;
+        if (array instanceof double[]) return ((double[]) array).length;
+        if (array instanceof char[]) return ((char[]) array).length;
+        if (array instanceof boolean[]) return ((boolean[]) array).length;
+        throw new RuntimeError(name, "Variable '" + name.lexeme + "' is not an array.");
+    }
+
+    private int index(Token name, Object array, Object index) {
+        int length = length(name, array);
+        if (!(index instanceof Integer)) {
+            if (Arithmetic.isInteger(index)) {
+                throw new RuntimeError(name, "Index " + stringify(index) + " out of bounds for array '" + name.lexeme
+                        + "' of length " + length + ".");
+            }
+            throw new RuntimeError(name, "Array index must be an integer.");
+        }
+        int i = (Integer) index;
+        if (i < 0 || i >= length) {
+            throw new RuntimeError(name, "Index " + i + " out of bounds for array '" + name.lexeme
+                    + "' of length " + length + ".");
+        }
+        return i;
+    }
+
+    // Top-level functions can be called before their declaration is reached.
+    private void defineFunctions(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function) {
+                visitFunctionStmt((Stmt.Function) statement);
+            }
+        }
+    }
+
+    @Override
+    public Object visitFunctionStmt(Stmt.Function stmt) {
+        int symbol = stmt.name.symbol;
+        if (symbol >= functions.length) {
+            functions = Arrays.copyOf(functions, Math.max(symbol + 1, functions.length * 2));
+        }
+        functions[symbol] = stmt;
+        return null;
+    }
+
+    @Override
+    public Object visitReturnStmt(Stmt.Return stmt) {
+        Object value = null;
+        Object[] arguments = null;
+        if (stmt.tail) {
+            Expr.Call call = (Expr.Call) stmt.value;
+            arguments = new Object[call.arguments.size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = evaluate(call.arguments.get(i));
+            }
+        } else if (stmt.value != null) {
+            value = evaluate(stmt.value);
+            if (!stmt.verified) checkReturn(stmt, value);
+        }
+        throw leave(value, arguments, stmt.tail && ((Expr.Call) stmt.value).verified);
+    }
+
+    void checkReturn(Stmt.Return stmt, Object value) {
+        if (!Environment.accepts(stmt.type, value)) {
+            throw new RuntimeError(stmt.keyword, "Type mismatch: Cannot return value " + stringify(value)
+                    + " from a function of type " + stmt.type + ".");
+        }
+    }
+
+    // The Return to throw for IBALIK, with the arguments of a self tail call.
+    Return leave(Object value, Object[] arguments, boolean verified) {
+        returning.value = value;
+        returning.arguments = arguments;
+        returning.verified = verified;
+        return returning;
+    }
+
+    @Override
+    public Object visitCallExpr(Expr.Call expr) {
+        Stmt.Function function = function(expr.name);
+        checkArity(expr.name, function, expr.arguments.size());
+        Environment frame = claimFrame();
+        try {
+            for (int i = 0; i < expr.arguments.size(); i++) {
+                bind(frame, function.params.get(i), evaluate(expr.arguments.get(i)), expr.verified);
+            }
+            return call(function, frame, null);
+        } catch (StackOverflowError e) {
+            if (depth > 1) throw e;
+            throw new RuntimeError(expr.name, "Stack overflow in call to '" + expr.name.lexeme + "'.");
+        } finally {
+            depth--;
+        }
+    }
+
+    // A call from compiled code, which runs the compiled `body` of the callee.
+    Object call(Expr.Call expr, Compiler.Code[] arguments, Compiler.Action[] body) {
+        Stmt.Function function = function(expr.name);
+        checkArity(expr.name, function, arguments.length);
+        Environment frame = claimFrame();
+        try {
+            for (int i = 0; i < arguments.length; i++) {
+                bind(frame, function.params.get(i), arguments[i].run(this), expr.verified);
+            }
+            return call(function, frame, body);
+        } catch (StackOverflowError e) {
+            if (depth > 1) throw e;
+            throw new RuntimeError(expr.name, "Stack overflow in call to '" + expr.name.lexeme + "'.");
+        } finally {
+            depth--;
+        }
+    }
+
+    private Stmt.Function function(Token name) {
+        int symbol = name.symbol;
+        Stmt.Function function = symbol < functions.length ? functions[symbol] : null;
+        if (function == null) {
+            throw new RuntimeError(name, "Undefined function '" + name.lexeme + "'.");
+        }
+        return function;
+    }
+
+    // Claims the frame first so calls among the arguments use the next one.
+    // The caller releases it by decrementing `depth`.
+    private Environment claimFrame() {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Environment frame = frames[depth];
+        if (frame == null) {
+            frame = frames[depth] = new Environment(globals);
+        }
+        depth++;
+        frame.clear();
+        return frame;
+    }
+
+    private Object call(Stmt.Function function, Environment frame, Compiler.Action[] body) {
+        Environment previous = this.environment;
+        // A recursive call re-enters the same loops; keep the caller's invariants.
+        int to = Math.min(function.slotsTo, hoisted.length);
+        Object[] saved = to > function.slotsFrom ? Arrays.copyOfRange(hoisted, function.slotsFrom, to) : null;
+        try {
+            for (;;) {
+                this.environment = frame;
+                try {
+                    if (body != null) {
+                        for (Compiler.Action action : body) {
+                            action.run(this);
+                        }
+                    } else {
+                        for (Stmt statement : function.body) {
+                            execute(statement);
+                        }
+                    }
+                    return null;
+                } catch (Return result) {
+                    if (result.arguments == null) {
+                        return result.value;
+                    }
+                    // Self tail call: rebind the parameters and run the body again.
+                    Object[] arguments = result.arguments;
+                    boolean verified = result.verified;
+                    checkArity(function.name, function, arguments.length);
+                    frame.clear();
+                    for (int i = 0; i < arguments.length; i++) {
+                        bind(frame, function.params.get(i), arguments[i], verified);
+                    }
+                }
+            }
+        } finally {
+            this.environment = previous;
+            if (saved != null) {
+                System.arraycopy(saved, 0, hoisted, function.slotsFrom, saved.length);
+            }
+        }
+    }
+
+    private void checkArity(Token name, Stmt.Function function, int count) {
+        if (count != function.params.size()) {
+            throw new RuntimeError(name, "Function '" + name.lexeme + "' expects " + function.params.size()
+                    + " argument(s) but got " + count + ".");
+        }
+    }
+
+    private void bind(Environment frame, Parameter param, Object value, boolean verified) {
+        if (!verified && !Environment.accepts(param.type.type, value)) {
+            throw new RuntimeError(param.name, "Type mismatch: Cannot pass value " + stringify(value)
+                    + " to parameter '" + param.name.lexeme + "' of type " + param.type.type + ".");
+        }
+        frame.shadow(param.name, value, param.type.type);
+    }
+
     @Override
     public Object visitBlockStmt(Block stmt) {
         executeBlock(stmt.statements, new Environment(environment));
@@ -365,6 +932,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         }
 
         if (isTruthy(condition)) {
+            branchTaken(stmt, 0);
             executeBlock(stmt.thenBranch, new Environment(environment));
         } else {
             boolean executedElseIf = false;
@@ -374,6 +942,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
                     throw new RuntimeError(null, "Condition must be a Boolean.");
                 }
                 if (isTruthy(elseIfCondition)) {
+                    branchTaken(stmt, i + 1);
                     executeBlock(stmt.elseIfBranches.get(i), new Environment(environment));
                     executedElseIf = true;
                     break;
@@ -381,12 +950,54 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
             }
 
             if (!executedElseIf && stmt.elseBranch != null) {
+                branchTaken(stmt, stmt.elseIfBranches.size() + 1);
                 executeBlock(stmt.elseBranch, new Environment(environment));
+            } else if (!executedElseIf) {
+                branchTaken(stmt, -1);
             }
         }
         return null;
     }
 
+    @Override
+    public Object visitSwitchStmt(Stmt.Switch stmt) {
+        If chain = stmt.chain;
+        int branch = branch(stmt, environment.get(stmt.name));
+        List<Stmt> statements;
+        if (branch == 0) {
+            statements = chain.thenBranch;
+        } else if (branch <= chain.elseIfBranches.size()) {
+            statements = chain.elseIfBranches.get(branch - 1);
+        } else if (chain.elseBranch != null) {
+            statements = chain.elseBranch;
+        } else {
+            return null;
+        }
+        executeBlock(statements, stmt.scoped[branch] ? new Environment(environment) : environment);
+        return null;
+    }
+
+    // The branch of `stmt` that `value` takes, or the KUNG WALA past the last
+    // KUNG DILI when it equals none of the constants.
+    static int branch(Stmt.Switch stmt, Object value) {
+        int none = stmt.chain.elseIfBranches.size() + 1;
+        int key;
+        if (stmt.character) {
+            if (!(value instanceof Character)) return none;
+            key = (char) value;
+        } else {
+            if (!(value instanceof Integer)) return none;
+            key = (int) value;
+        }
+        if (stmt.table != null) {
+            long offset = (long) key - stmt.low;
+            if (offset < 0 || offset >= stmt.table.length || stmt.table[(int) offset] == 0) return none;
+            return stmt.table[(int) offset] - 1;
+        }
+        Integer branch = stmt.cases.get(key);
+        return branch == null ? none : branch;
+    }
+
     @Override
     public Object visitLogicalExpr(Logical expr) {
         Object left = evaluate(expr.left);
@@ -407,7 +1018,25 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         if (stmt.initializer != null) {
             execute(stmt.initializer);
         }
+        resetInvariants(stmt.invariants);
+
+        runLoop(stmt);
+        return null;
+    }
+
+    // Hooks for InstrumentedInterpreter. They are empty here, so unless that
+    // subclass is in use the JIT inlines them away.
+    void branchTaken(If stmt, int branch) {
+    }
 
+    void loopIterated(For stmt) {
+    }
+
+    Object valueOf(Token name) {
+        return environment.get(name);
+    }
+
+    private void runLoop(For stmt) {
         while (true) {
             Object condition = evaluate(stmt.condition);
 
@@ -417,22 +1046,231 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
             if (!isTruthy(condition)) break;
 
+            loopIterated(stmt);
             executeBlock(stmt.body, new Environment(environment));
 
             if (stmt.increment != null) {
                 evaluate(stmt.increment);
             }
         }
+    }
 
+    @Override
+    public Object visitCountedForStmt(CountedFor stmt) {
+        For loop = stmt.loop;
+        if (loop.initializer != null) {
+            execute(loop.initializer);
+        }
+        resetInvariants(loop.invariants);
+
+        main.Variable counter = environment.lookup(stmt.name);
+        Object start = counter.getValue();
+        Object limit = evaluate(stmt.bound);
+        if (!(start instanceof Integer) || !(limit instanceof Integer)) {
+            runLoop(loop);
+            return null;
+        }
+
+        int i = (int) start;
+        int bound = (int) limit;
+        // A counter that would pass the int range keeps counting as a wider NUMERO.
+        if (iterations(stmt, i, bound) < 0) {
+            runLoop(loop);
+            return null;
+        }
+        if (stmt.independent && runParallel(stmt, counter, i, bound)) {
+            return null;
+        }
+        try {
+            while (compare(stmt.operator, i, bound)) {
+                if (stmt.observed) {
+                    counter.setValue(i);
+                }
+                executeBlock(loop.body, stmt.scoped ? new Environment(environment) : environment);
+                i += stmt.step;
+            }
+        } finally {
+            counter.setValue(i);
+        }
         return null;
     }
 
+    private static final class Chunk {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        boolean displayed;
+        int reached;
+        Throwable failure;
+    }
+
+    // Runs the iterations of an independent loop in chunks on the common pool.
+    // Each chunk gets its own interpreter and output buffers, and the buffers are
+    // written out in iteration order, so the output matches a sequential run.
+    boolean runParallel(CountedFor stmt, main.Variable counter, int start, int bound) {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long count = iterations(stmt, start, bound);
+        if (parallelism < 2 || count < PARALLEL_THRESHOLD) {
+            return false;
+        }
+
+        environment.settle();
+        int chunks = (int) Math.min(count, parallelism * 4L);
+        List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            long first = count * c / chunks;
+            long last = count * (c + 1) / chunks;
+            int from = (int) (start + first * stmt.step);
+            tasks.add(ForkJoinPool.commonPool().submit(() -> runChunk(stmt, counter, from, last - first)));
+        }
+
+        int end = (int) (start + count * stmt.step);
+        try {
+            for (ForkJoinTask<Chunk> task : tasks) {
+                Chunk chunk = task.join();
+                out.writeBytes(chunk.out.toByteArray());
+                err.writeBytes(chunk.err.toByteArray());
+                hasDisplay |= chunk.displayed;
+                if (chunk.failure != null) {
+                    end = chunk.reached;
+                    if (chunk.failure instanceof Error) throw (Error) chunk.failure;
+                    throw (RuntimeException) chunk.failure;
+                }
+            }
+        } finally {
+            for (ForkJoinTask<Chunk> task : tasks) {
+                task.cancel(false);
+            }
+            counter.setValue(end);
+        }
+        return true;
+    }
+
+    private Chunk runChunk(CountedFor stmt, main.Variable counter, int from, long count) {
+        Chunk chunk = new Chunk();
+        Interpreter worker = worker(chunk);
+
+        int i = from;
+        try {
+            for (long k = 0; k < count; k++, i += stmt.step) {
+                Environment scope = new Environment(environment);
+                scope.shadow(stmt.name, i, counter.getType());
+                worker.executeBlock(stmt.loop.body, scope);
+            }
+        } catch (RuntimeException | Error e) {
+            chunk.failure = e;
+            chunk.reached = i;
+        }
+        return finish(worker, chunk);
+    }
+
+    // An interpreter over the same globals and functions that writes to `chunk`.
+    private Interpreter worker(Chunk chunk) {
+        Interpreter worker = sibling(new PrintStream(chunk.out, false, out.charset()),
+                new PrintStream(chunk.err, false, err.charset()));
+        worker.hoisted = hoisted.clone();
+        worker.functions = functions;
+        return worker;
+    }
+
+    // A fresh interpreter of the same kind over the same globals.
+    Interpreter sibling(PrintStream out, PrintStream err) {
+        return new Interpreter(globals, out, err);
+    }
+
+    private static Chunk finish(Interpreter worker, Chunk chunk) {
+        worker.out.flush();
+        worker.err.flush();
+        chunk.displayed = worker.hasDisplay;
+        return chunk;
+    }
+
+    // Parses the branch the first time it runs, then runs it in place.
+    @Override
+    public Object visitDeferredStmt(Stmt.Deferred stmt) {
+        for (Stmt statement : stmt.parser.body(stmt)) {
+            execute(statement);
+        }
+        return null;
+    }
+
+    // Runs every block on its own virtual thread, with its own interpreter and
+    // output buffers, and only goes on once all of them have finished. The
+    // output is then written in block order, so it is the same on every run.
+    // The checker has made sure no block writes a variable the others can see.
+    @Override
+    public Object visitConcurrentStmt(Stmt.Concurrent stmt) {
+        environment.settle();
+        List<Future<Chunk>> tasks = new ArrayList<>(stmt.blocks.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (List<Stmt> block : stmt.blocks) {
+                tasks.add(executor.submit(() -> runBlock(block)));
+            }
+        }
+
+        Throwable failure = null;
+        for (Future<Chunk> task : tasks) {
+            Chunk chunk = task.resultNow();
+            out.writeBytes(chunk.out.toByteArray());
+            err.writeBytes(chunk.err.toByteArray());
+            hasDisplay |= chunk.displayed;
+            if (failure == null) failure = chunk.failure;
+        }
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure != null) throw (RuntimeException) failure;
+        return null;
+    }
+
+    private Chunk runBlock(List<Stmt> block) {
+        Chunk chunk = new Chunk();
+        Interpreter worker = worker(chunk);
+        try {
+            worker.executeBlock(block, new Environment(environment));
+        } catch (RuntimeException | Error e) {
+            chunk.failure = e;
+        }
+        return finish(worker, chunk);
+    }
+
+    // Number of iterations when the header counts towards its bound; -1 when it
+    // would only stop by wrapping around.
+    static long iterations(CountedFor stmt, int start, int bound) {
+        switch (stmt.operator) {
+            case LESS_THAN:
+                return stmt.step > 0 ? Math.max(0L, (long) bound - start) : -1;
+            case LESS_THAN_EQUAL:
+                return stmt.step > 0 && bound < Integer.MAX_VALUE ? Math.max(0L, (long) bound - start + 1) : -1;
+            case GREATER_THAN:
+                return stmt.step < 0 ? Math.max(0L, (long) start - bound) : -1;
+            default:
+                return stmt.step < 0 && bound > Integer.MIN_VALUE ? Math.max(0L, (long) start - bound + 1) : -1;
+        }
+    }
+
+    static boolean compare(TokenType operator, int left, int right) {
+        switch (operator) {
+            case LESS_THAN:
+                return left < right;
+            case LESS_THAN_EQUAL:
+                return left <= right;
+            case GREATER_THAN:
+                return left > right;
+            default:
+                return left >= right;
+        }
+    }
+
 
     @Override
     public Object visitScanStmt(Scan stmt) {
-        @SuppressWarnings("resource")
-        Scanner scanner = new java.util.Scanner(System.in);
-        String line = scanner.nextLine();
+        String line;
+        try {
+            line = input.readLine();
+        } catch (IOException e) {
+            throw new RuntimeError(stmt.identifiers.get(0), "Cannot read input: " + e.getMessage());
+        }
+        if (line == null) {
+            throw new RuntimeError(stmt.identifiers.get(0), "No input left to read.");
+        }
 
         List<String> input = List.of(line.split(",")).stream()
                 .map(String::trim)
@@ -441,11 +1279,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         List<Object> parsedInput = new ArrayList<>();
 
         for (int i = 0; i < input.size(); i++) {
-            try {
-                int intVal = Integer.parseInt(input.get(i));
-                parsedInput.add(intVal);
+            Object integer = Arithmetic.parse(input.get(i));
+            if (integer != null) {
+                parsedInput.add(integer);
                 continue;
-            } catch (NumberFormatException e) {
             }
 
             try {
@@ -480,6 +1317,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         int current = 0;
         while (current < stmt.identifiers.size()) {
             Object value = parsedInput.get(current);
+            if (environment.lookup(stmt.identifiers.get(current)).getType() == TokenType.STRING) {
+                value = input.get(current);
+            }
             environment.assign(stmt.identifiers.get(current), value);
             current++;
         }
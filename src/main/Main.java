@@ -2,50 +2,196 @@ package main;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
 
 public class Main {
-    private static final Interpreter interpreter = new Interpreter();
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    private static Interpreter interpreter = new Interpreter();
 
-    public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+    // Where the program running on this thread reports its errors, and whether
+    // it has. Per thread, so the daemon can run several programs at once.
+    static final class Report {
+        final PrintStream err;
+        boolean hadError = false;
+        boolean hadRuntimeError = false;
+
+        Report(PrintStream err) {
+            this.err = err;
+        }
+    }
+
+    private static final ThreadLocal<Report> report = ThreadLocal.withInitial(() -> new Report(System.err));
+
+    static Report report() {
+        return report.get();
+    }
+
+    // null returns this thread to reporting on System.err.
+    static void setReport(Report current) {
+        if (current == null) {
+            report.remove();
         } else {
+            report.set(current);
+        }
+    }
+
+    // --snapshot writes the state reached just before the first top-level
+    // statement on or after <line>; --resume continues a run from such a file.
+    private static int snapshotLine = -1;
+    private static Path snapshotPath;
+    private static Path resumePath;
+    private static Path inputPath;
+    // --fusions lists the superinstructions the optimizer formed, on stderr.
+    private static boolean reportFusions = false;
+    // --closures runs the program compiled to closures rather than walking the tree.
+    private static boolean closures = false;
+    // --lazy leaves large KUNG branches unparsed until they run, validating
+    // them in the background meanwhile.
+    private static boolean lazy = false;
+    // --coverage walks the tree on an InstrumentedInterpreter and reports what
+    // ran, on stderr.
+    private static Coverage coverage;
+    private static boolean watch = false;
+
+    // Scanning and expression parsing leave nesting alone, but parsing
+    // statements, checking, optimizing and running all recurse once or more per
+    // level, and a default thread stack gives out after a few thousand levels.
+    // Programs run on a thread whose stack is sized from the heap instead; the
+    // memory is only committed as deep nesting uses it. The daemon keeps each
+    // submission on its own virtual thread, where -Xss sets the limit.
+    //
+    // A nested KUNG costs about 1 KB of that stack, so the limit is roughly 60
+    // levels per MB of heap, and never under about 60,000 levels: some 90,000
+    // at a default 1.5 GB heap, where 100,000 levels need -Xmx2g.
+    static final long STACK_SIZE = Math.max(64L << 20, Runtime.getRuntime().maxMemory() / 16);
+
+    public static void main(String[] args) throws IOException {
+        String script = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--snapshot") && i + 2 < args.length) {
+                snapshotLine = Integer.parseInt(args[++i]);
+                snapshotPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--resume") && i + 1 < args.length) {
+                resumePath = Paths.get(args[++i]);
+            } else if (args[i].equals("--input") && i + 1 < args.length) {
+                inputPath = Paths.get(args[++i]);
+            } else if (args[i].equals("--watch")) {
+                watch = true;
+            } else if (args[i].equals("--fusions")) {
+                reportFusions = true;
+            } else if (args[i].equals("--closures")) {
+                closures = true;
+            } else if (args[i].equals("--coverage")) {
+                coverage = new Coverage();
+            } else if (args[i].equals("--lazy")) {
+                lazy = true;
+            } else if (script == null && !args[i].startsWith("--")) {
+                script = args[i];
+            } else {
+                usage();
+            }
+        }
+        if (coverage != null) {
+            if (closures || resumePath != null || watch) {
+                usage();
+            }
+            interpreter = new InstrumentedInterpreter(coverage);
+        }
+
+        String path = script;
+        try {
+            onLargeStack(() -> {
+                try {
+                    start(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return null;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    // Runs `work` on a thread with a stack of STACK_SIZE and waits for it.
+    static <T> T onLargeStack(Supplier<T> work) {
+        FutureTask<T> task = new FutureTask<>(work::get);
+        new Thread(null, task, "program", STACK_SIZE).start();
+        boolean interrupted = false;
+        try {
+            for (;;) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void start(String script) throws IOException {
+        if (watch) {
+            if (script == null || snapshotPath != null || resumePath != null) {
+                usage();
+            }
+            try {
+                new Watch(Paths.get(script), inputPath).run();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else if (script != null) {
+            runFile(script);
+        } else if (snapshotPath == null && resumePath == null && inputPath == null && !reportFusions && !closures
+                && !lazy && coverage == null) {
             runPrompt();
+        } else {
+            usage();
         }
     }
 
+    private static void usage() {
+        System.out.println("Usage: jlox [--input <file>] [--fusions] [--closures | --coverage] [--lazy] [--watch | --snapshot <line> <file> | --resume <file>] [script]");
+        System.exit(64);
+    }
+
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
         run(new String(bytes, Charset.defaultCharset()));
-        if (hadError)
+        if (report().hadError)
             System.exit(65);
     }
 
     private static void runPrompt() throws IOException {
         InputStreamReader input = new InputStreamReader(System.in);
         BufferedReader reader = new BufferedReader(input);
-        for (;;) {
-            System.out.print("> ");
-            String line = reader.readLine();
-            String linePrompts = "SUGOD " + line + " KATAPUSAN";
-            if (line == null)
-                break;
-            run(linePrompts);
-        }
+        // DAWAT shares the prompt's reader so neither buffers away the other's lines.
+        interpreter.setInput(InputSource.reader(reader));
+        new Repl(interpreter).run(reader);
     }
 
     private static void run(String source) {
-        Scanner scanner = new Scanner(source);
+        SymbolTable symbols = new SymbolTable();
+        Scanner scanner = new Scanner(source, symbols);
 
         // List<Token> tokens = scanner.scanTokens();
         // for (Token token : tokens) {
@@ -55,16 +201,86 @@ public class Main {
         try {
             List<Token> tokens = scanner.scanTokens();
             Parser parser = new Parser(tokens);
+            if (lazy) {
+                parser.lazy();
+            }
             List<Stmt> statements = parser.parse();
-            if (hadError)
+            if (lazy) {
+                Thread validation = new Thread(null, parser::parseDeferred, "validation", STACK_SIZE);
+                validation.setDaemon(true);
+                validation.start();
+                interpreter.validateWith(parser);
+            }
+            new TypeChecker().check(statements);
+            if (report().hadError)
                 System.exit(65);
-            if (hadRuntimeError)
+            if (report().hadRuntimeError)
                 System.exit(70);
-            interpreter.interpret(statements);
+            Optimizer optimizer = new Optimizer();
+            statements = optimizer.optimize(statements);
+            if (reportFusions) {
+                System.err.println("Fusions: " + (optimizer.fusions().isEmpty() ? "none" : optimizer.fusions()));
+            }
+            Compiler.Action[] compiled = closures ? new Compiler().compile(statements) : null;
+
+            InputSource input = InputSource.stdin();
+            if (inputPath != null) {
+                try {
+                    input = InputSource.file(inputPath);
+                } catch (IOException e) {
+                    System.err.println("Cannot read input from " + inputPath + ": " + e.getMessage());
+                    System.exit(66);
+                    return;
+                }
+            }
+            interpreter.setInput(input);
+
+            long program = fingerprint(source);
+            if (resumePath != null) {
+                Snapshot snapshot;
+                try (InputStream in = Files.newInputStream(resumePath)) {
+                    snapshot = Snapshot.read(in, program, symbols);
+                } catch (IOException e) {
+                    System.err.println("Cannot resume from " + resumePath + ": " + e.getMessage());
+                    System.exit(66);
+                    return;
+                }
+                Interpreter resumed = snapshot.fork(System.out, System.err);
+                resumed.setInput(input);
+                if (lazy) {
+                    resumed.validateWith(parser);
+                }
+                resumed.interpret(statements, compiled, snapshot.position, -1, null);
+            } else if (snapshotPath != null) {
+                int at = 0;
+                while (at < statements.size() && parser.lines().get(at) < snapshotLine) {
+                    at++;
+                }
+                interpreter.interpret(statements, compiled, 0, at, snapshot -> {
+                    try (OutputStream out = Files.newOutputStream(snapshotPath)) {
+                        snapshot.write(out, program, symbols);
+                    } catch (IOException e) {
+                        System.err.println("Cannot write snapshot to " + snapshotPath + ": " + e.getMessage());
+                    }
+                });
+            } else {
+                interpreter.interpret(statements, compiled, 0, -1, null);
+            }
+            if (coverage != null) {
+                System.err.println(coverage);
+            }
+        } catch (StackOverflowError e) {
+            tooDeep();
         } catch (Exception e) {
         }
     }
 
+    private static long fingerprint(String source) {
+        CRC32 crc = new CRC32();
+        crc.update(source.getBytes(StandardCharsets.UTF_8));
+        return ((long) source.length() << 32) ^ crc.getValue();
+    }
+
     static void error(int line, int col, String message) {
         report(line, col, "", message);
     }
@@ -78,19 +294,34 @@ public class Main {
     }
 
     private static void report(int line, String where, String message) {
-        System.err.println("[Line " + line + "] Syntax Error : " + message);
+        report().err.println("[Line " + line + "] Syntax Error : " + message);
 
-        hadError = true;
+        report().hadError = true;
     }
 
     private static void report(int line, int col, String where, String message) {
-        System.err.println("[Line " + line + "] Syntax Error : " + message);
-        hadError = true;
+        report().err.println("[Line " + line + "] Syntax Error : " + message);
+        report().hadError = true;
+    }
+
+    static void typeError(Token token, String message) {
+        int line = token == null ? 0 : token.line;
+        report().err.println("[Line " + line + "] Type Error : " + message);
+        report().hadError = true;
+    }
+
+    // Even the large stack ran out. A virtual thread, as in the daemon, has the
+    // stack -Xss gives it instead.
+    static void tooDeep() {
+        String remedy = Thread.currentThread().isVirtual() ? "a larger stack with -Xss" : "more memory with -Xmx";
+        report().err.println("[Error] The program nests too deeply to run; give Java " + remedy + ".");
+        report().hadError = true;
     }
 
     static void runtimeError(RuntimeError e) {
-        System.err.println("[Line " + e.token.line + "] Runtime Error : " + e.getMessage());
-        hadRuntimeError = true;
+        int line = e.token == null ? 0 : e.token.line;
+        report().err.println("[Line " + line + "] Runtime Error : " + e.getMessage());
+        report().hadRuntimeError = true;
     }
 
 }
@@ -0,0 +1,693 @@
+package main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Rewrites the parsed program before it is interpreted. Expressions inside an
+// ALANG SA that only read variables the loop never writes or declares are
+// wrapped in Expr.Invariant, which the interpreter evaluates at most once per
+// entry into the loop. The wrapped expression is still evaluated lazily, in
+// place and in its own Environment, so typed assignments, scoping and runtime
+// errors behave exactly as before.
+//
+// Checked trees of a few common shapes are then fused into single nodes:
+// `x = x + c`, `x < c`, `x % c == k` and `IPAKITA: a & b & ...`. Each fused
+// node keeps the tree it replaces.
+//
+// Reads of a PIRMI whose value the checker knows become that literal, and
+// operators whose operands are all literals are folded, by the interpreter's
+// own arithmetic so the result is exactly what the run would have computed.
+// An operator that would stop with a runtime error is left for the run.
+//
+// A KUNG chain of at least MIN_CASES `x == c` conditions on one variable, each
+// c a different NUMERO or LETRA constant, becomes a Stmt.Switch that picks its
+// branch by the value of x instead of testing the conditions in turn.
+public class Optimizer implements Stmt.Visitor<Stmt>, Expr.Visitor<Expr> {
+
+    private static class Loop {
+        final Effects effects;
+        final List<Expr.Invariant> invariants = new ArrayList<>();
+
+        Loop(Effects effects) {
+            this.effects = effects;
+        }
+
+        boolean isInvariant(Effects expr) {
+            return !effects.calls && !effects.writesAny(expr.read);
+        }
+    }
+
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    private static final int MIN_CASES = 4;
+    // Constants this dense dispatch through a table rather than a hash map.
+    private static final int TABLE_SPREAD = 4;
+
+    private final List<Loop> loops = new ArrayList<>();
+    private final Interpreter folder = folder();
+    private int slots = 0;
+    private final Map<String, Integer> fusions = new TreeMap<>();
+
+    // How many times each fusion fired, by name.
+    Map<String, Integer> fusions() {
+        return fusions;
+    }
+
+    private void fused(String kind) {
+        fusions.merge(kind, 1, Integer::sum);
+    }
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        for (Stmt statement : statements) {
+            optimized.add(optimize(statement));
+        }
+        return optimized;
+    }
+
+    private static Interpreter folder() {
+        return new Interpreter(new Environment(), DISCARD, DISCARD);
+    }
+
+    // The value of `expr` when it only combines literals and inlined PIRMI
+    // reads, or Interpreter.UNSET.
+    static Object fold(Expr expr) {
+        return fold(expr, folder());
+    }
+
+    private static Object fold(Expr expr, Interpreter folder) {
+        if (expr instanceof Expr.Literal) {
+            Object value = ((Expr.Literal) expr).value;
+            return value == null ? Interpreter.UNSET : value;
+        }
+        if (expr instanceof Expr.Variable) {
+            Expr.Literal constant = ((Expr.Variable) expr).constant;
+            return constant == null ? Interpreter.UNSET : constant.value;
+        }
+        if (expr instanceof Expr.Grouping) {
+            return fold(((Expr.Grouping) expr).expression, folder);
+        }
+        try {
+            if (expr instanceof Expr.Unary) {
+                Expr.Unary unary = (Expr.Unary) expr;
+                Object right = fold(unary.right, folder);
+                if (right == Interpreter.UNSET) return right;
+                return folded(folder.unary(unary, right));
+            }
+            if (expr instanceof Expr.Binary) {
+                Expr.Binary binary = (Expr.Binary) expr;
+                Object left = fold(binary.left, folder);
+                if (left == Interpreter.UNSET) return left;
+                Object right = fold(binary.right, folder);
+                if (right == Interpreter.UNSET) return right;
+                return folded(folder.binary(binary, left, right));
+            }
+        } catch (RuntimeError e) {
+            // Left for the run to report.
+        }
+        return Interpreter.UNSET;
+    }
+
+    private static Object folded(Object value) {
+        return value == null ? Interpreter.UNSET : value;
+    }
+
+    private Expr literal(Expr expr) {
+        Object value = fold(expr, folder);
+        if (value == Interpreter.UNSET) return expr;
+        fused("fold");
+        return new Expr.Literal(value);
+    }
+
+    private Stmt optimize(Stmt stmt) {
+        if (stmt == null) return null;
+        return stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        if (expr == null) return null;
+
+        if (!loops.isEmpty() && isCompound(expr)) {
+            Effects effects = Effects.of(expr);
+            if (effects.isPure() && !effects.read.isEmpty()) {
+                // Hoist to the outermost loop the expression is invariant in.
+                for (Loop loop : loops) {
+                    if (loop.isInvariant(effects)) {
+                        Expr.Invariant invariant = new Expr.Invariant(expr, slots++);
+                        loop.invariants.add(invariant);
+                        return invariant;
+                    }
+                }
+            }
+        }
+
+        return expr.accept(this);
+    }
+
+    private boolean isCompound(Expr expr) {
+        while (expr instanceof Expr.Grouping) {
+            expr = ((Expr.Grouping) expr).expression;
+        }
+        return expr instanceof Expr.Binary || expr instanceof Expr.Unary || expr instanceof Expr.Logical
+                || expr instanceof Expr.Index;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        return new Stmt.Block(optimize(stmt.statements));
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Stmt append = append(stmt.expression);
+        if (append != null) return append;
+
+        Expr expression = optimize(stmt.expression);
+        if (expression == stmt.expression) return stmt;
+        return new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        List<Expr> elseIfConditions = new ArrayList<>();
+        for (Expr condition : stmt.elseIfConditions) {
+            elseIfConditions.add(optimize(condition));
+        }
+        List<List<Stmt>> elseIfBranches = new ArrayList<>();
+        for (List<Stmt> branch : stmt.elseIfBranches) {
+            elseIfBranches.add(optimize(branch));
+        }
+        Stmt.If optimized = new Stmt.If(optimize(stmt.condition), optimize(stmt.thenBranch), elseIfConditions,
+                elseIfBranches, stmt.elseBranch == null ? null : optimize(stmt.elseBranch));
+        Stmt dispatch = dispatch(stmt, optimized);
+        return dispatch != null ? dispatch : optimized;
+    }
+
+    // Reads the conditions as parsed, before `x == c` is fused.
+    private Stmt dispatch(Stmt.If stmt, Stmt.If optimized) {
+        int count = stmt.elseIfConditions.size() + 1;
+        if (count < MIN_CASES) return null;
+
+        Token name = null;
+        Class<?> kind = null;
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            Expr condition = i == 0 ? stmt.condition : stmt.elseIfConditions.get(i - 1);
+            while (condition instanceof Expr.Grouping) {
+                condition = ((Expr.Grouping) condition).expression;
+            }
+            if (!(condition instanceof Expr.Binary)) return null;
+            Expr.Binary equals = (Expr.Binary) condition;
+            if (equals.operator.type != TokenType.EQUAL_EQUAL || !(equals.left instanceof Expr.Variable)) return null;
+            Expr.Variable variable = (Expr.Variable) equals.left;
+            if (variable.constant != null) return null;
+            if (name == null) {
+                name = variable.name;
+            } else if (variable.name.symbol != name.symbol) {
+                return null;
+            }
+
+            Object constant = fold(equals.right, folder);
+            if (!(constant instanceof Integer) && !(constant instanceof Character)) return null;
+            if (kind == null) {
+                kind = constant.getClass();
+            } else if (constant.getClass() != kind) {
+                return null;
+            }
+            keys[i] = constant instanceof Character ? (char) constant : (int) constant;
+        }
+
+        int low = keys[0];
+        int high = keys[0];
+        for (int key : keys) {
+            low = Math.min(low, key);
+            high = Math.max(high, key);
+        }
+        int[] table = null;
+        Map<Integer, Integer> cases = null;
+        if ((long) high - low < (long) TABLE_SPREAD * count) {
+            table = new int[high - low + 1];
+            // Backwards, so a repeated constant keeps its first branch, as in the chain.
+            for (int i = count - 1; i >= 0; i--) {
+                table[keys[i] - low] = i + 1;
+            }
+        } else {
+            cases = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                cases.putIfAbsent(keys[i], i);
+            }
+        }
+
+        boolean[] scoped = new boolean[count + 1];
+        scoped[0] = isScoped(optimized.thenBranch);
+        for (int i = 1; i < count; i++) {
+            scoped[i] = isScoped(optimized.elseIfBranches.get(i - 1));
+        }
+        scoped[count] = optimized.elseBranch != null && isScoped(optimized.elseBranch);
+
+        fused("dispatch");
+        return new Stmt.Switch(optimized, name, kind == Character.class, low, table, cases, scoped);
+    }
+
+    // A branch not yet parsed may declare anything.
+    private static boolean isScoped(List<Stmt> branch) {
+        for (Stmt statement : branch) {
+            if (isDeclaration(statement) || statement instanceof Stmt.Deferred) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Stmt visitConcurrentStmt(Stmt.Concurrent stmt) {
+        List<List<Stmt>> blocks = new ArrayList<>();
+        for (List<Stmt> block : stmt.blocks) {
+            blocks.add(optimize(block));
+        }
+        return new Stmt.Concurrent(stmt.keyword, blocks);
+    }
+
+    // Runs as parsed, unchecked.
+    @Override
+    public Stmt visitDeferredStmt(Stmt.Deferred stmt) {
+        return stmt;
+    }
+
+    // A checked `s = s & a & b` can only target a PULONG, since & always yields
+    // one. Its value is discarded here, so the parts can be appended in place.
+    private Stmt append(Expr expression) {
+        if (!(expression instanceof Expr.Assign) || !((Expr.Assign) expression).verified) return null;
+        Expr.Assign assign = (Expr.Assign) expression;
+
+        List<Expr> parts = new ArrayList<>();
+        Expr left = assign.value;
+        while (left instanceof Expr.Binary && ((Expr.Binary) left).operator.type == TokenType.AMPERSAND) {
+            parts.add(0, ((Expr.Binary) left).right);
+            left = ((Expr.Binary) left).left;
+        }
+        if (parts.isEmpty() || !isVariable(left, assign.name)) return null;
+
+        List<Expr> optimized = new ArrayList<>(parts.size());
+        for (Expr part : parts) {
+            // Every part is evaluated before any is appended, so a part may read
+            // the target, but one that writes it would be overwritten.
+            Effects effects = Effects.of(part);
+            if (effects.writes(assign.name.symbol) || effects.calls) {
+                return null;
+            }
+            optimized.add(optimize(part));
+        }
+        return new Stmt.Append(assign.name, optimized);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        Expr expression = optimize(stmt.expression);
+        Stmt.Print print = expression == stmt.expression ? stmt : new Stmt.Print(expression);
+
+        List<Expr> parts = new ArrayList<>();
+        while (expression instanceof Expr.Binary && ((Expr.Binary) expression).operator.type == TokenType.AMPERSAND) {
+            parts.add(0, ((Expr.Binary) expression).right);
+            expression = ((Expr.Binary) expression).left;
+        }
+        if (parts.isEmpty()) return print;
+        parts.add(0, expression);
+        fused("print-concat");
+        return new Stmt.PrintConcat(parts, print);
+    }
+
+    @Override
+    public Stmt visitScanStmt(Stmt.Scan stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitForStmt(Stmt.For stmt) {
+        // The initializer runs once per entry, so it belongs to the enclosing loop.
+        Stmt initializer = optimize(stmt.initializer);
+
+        Loop loop = new Loop(Effects.of(stmt));
+        loops.add(loop);
+        try {
+            Expr condition = optimize(stmt.condition);
+            Expr increment = optimize(stmt.increment);
+            List<Stmt> body = optimize(stmt.body);
+            Stmt.For optimized = new Stmt.For(initializer, condition, increment, body, loop.invariants);
+            Stmt counted = countedLoop(optimized, loop);
+            return counted != null ? counted : optimized;
+        } finally {
+            loops.remove(loops.size() - 1);
+        }
+    }
+
+    @Override
+    public Stmt visitCountedForStmt(Stmt.CountedFor stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitSwitchStmt(Stmt.Switch stmt) {
+        return stmt;
+    }
+
+    // Matches `i < bound, i++` style headers where the bound is loop-invariant and
+    // the body never assigns the induction variable.
+    private Stmt countedLoop(Stmt.For stmt, Loop loop) {
+        Expr header = unfused(stmt.increment);
+        if (!(header instanceof Expr.Assign)) return null;
+        Expr.Assign increment = (Expr.Assign) header;
+        if (!(increment.value instanceof Expr.Binary)) return null;
+        Expr.Binary step = (Expr.Binary) increment.value;
+        if (!isVariable(step.left, increment.name)
+                || !(step.right instanceof Expr.Literal)
+                || !Integer.valueOf(1).equals(((Expr.Literal) step.right).value)
+                || (step.operator.type != TokenType.PLUS && step.operator.type != TokenType.MINUS)) {
+            return null;
+        }
+
+        header = unfused(stmt.condition);
+        if (!(header instanceof Expr.Binary)) return null;
+        Expr.Binary condition = (Expr.Binary) header;
+        switch (condition.operator.type) {
+            case LESS_THAN:
+            case LESS_THAN_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_EQUAL:
+                break;
+            default:
+                return null;
+        }
+        if (!isVariable(condition.left, increment.name)) return null;
+
+        Effects bound = Effects.of(condition.right);
+        if (!bound.isPure() || !loop.isInvariant(bound)) return null;
+
+        Effects body = Effects.of(stmt.body);
+        boolean scoped = false;
+        for (Stmt statement : stmt.body) {
+            scoped |= isDeclaration(statement);
+        }
+        int symbol = increment.name.symbol;
+        // A call may assign the counter through the globals.
+        if (body.assigned.get(symbol) || body.calls) return null;
+
+        // Iterations are independent when they only write their own locals and never read input.
+        boolean independent = body.escaping.isEmpty() && !body.scans && !body.returns
+                && !body.declared.get(symbol);
+
+        return new Stmt.CountedFor(stmt, increment.name, condition.operator.type, condition.right,
+                step.operator.type == TokenType.PLUS ? 1 : -1, body.read.get(symbol), scoped, independent);
+    }
+
+    private static Expr unfused(Expr expr) {
+        if (expr instanceof Expr.Increment) return ((Expr.Increment) expr).original;
+        if (expr instanceof Expr.CompareConstant) return ((Expr.CompareConstant) expr).original;
+        if (expr instanceof Expr.Remainder) return ((Expr.Remainder) expr).original;
+        return expr;
+    }
+
+    static boolean isDeclaration(Stmt stmt) {
+        return stmt instanceof Stmt.Int || stmt instanceof Stmt.Float || stmt instanceof Stmt.Char
+                || stmt instanceof Stmt.Bool || stmt instanceof Stmt.Array || stmt instanceof Stmt.Text;
+    }
+
+    private boolean isVariable(Expr expr, Token name) {
+        return expr instanceof Expr.Variable && ((Expr.Variable) expr).name.symbol == name.symbol;
+    }
+
+    @Override
+    public Stmt visitIntStmt(Stmt.Int stmt) {
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        Stmt.Int optimized = new Stmt.Int(stmt.name, initializer, stmt.constant);
+        optimized.verified = stmt.verified;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitFloatStmt(Stmt.Float stmt) {
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        Stmt.Float optimized = new Stmt.Float(stmt.name, initializer, stmt.constant);
+        optimized.verified = stmt.verified;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitCharStmt(Stmt.Char stmt) {
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        Stmt.Char optimized = new Stmt.Char(stmt.name, initializer, stmt.constant);
+        optimized.verified = stmt.verified;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitBoolStmt(Stmt.Bool stmt) {
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        Stmt.Bool optimized = new Stmt.Bool(stmt.name, initializer, stmt.constant);
+        optimized.verified = stmt.verified;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitTextStmt(Stmt.Text stmt) {
+        Expr initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) return stmt;
+        Stmt.Text optimized = new Stmt.Text(stmt.name, initializer, stmt.constant);
+        optimized.verified = stmt.verified;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitAppendStmt(Stmt.Append stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        int from = slots;
+        Stmt.Function optimized = new Stmt.Function(stmt.name, stmt.returnType, stmt.params, optimize(stmt.body));
+        optimized.slotsFrom = from;
+        optimized.slotsTo = slots;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        Expr value = optimize(stmt.value);
+        if (value == stmt.value) return stmt;
+        Stmt.Return optimized = new Stmt.Return(stmt.keyword, stmt.type, value, stmt.tail);
+        optimized.verified = stmt.verified;
+        return optimized;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        List<Expr> arguments = new ArrayList<>(expr.arguments.size());
+        boolean changed = false;
+        for (Expr argument : expr.arguments) {
+            Expr optimized = optimize(argument);
+            changed |= optimized != argument;
+            arguments.add(optimized);
+        }
+        if (!changed) return expr;
+        Expr.Call optimized = new Expr.Call(expr.name, arguments);
+        optimized.verified = expr.verified;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitArrayStmt(Stmt.Array stmt) {
+        Expr size = optimize(stmt.size);
+        if (size == stmt.size) return stmt;
+        return new Stmt.Array(stmt.kind, stmt.name, size);
+    }
+
+    @Override
+    public Expr visitIndexExpr(Expr.Index expr) {
+        Expr index = optimize(expr.index);
+        if (index == expr.index) return expr;
+        return new Expr.Index(expr.name, index);
+    }
+
+    @Override
+    public Expr visitIndexAssignExpr(Expr.IndexAssign expr) {
+        Expr index = optimize(expr.index);
+        Expr value = optimize(expr.value);
+        if (index == expr.index && value == expr.value) return expr;
+        Expr.IndexAssign optimized = new Expr.IndexAssign(expr.name, index, value);
+        optimized.verified = expr.verified;
+        return optimized;
+    }
+
+    @Override
+    public Expr visitLengthExpr(Expr.Length expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+        Expr.Assign optimized = expr;
+        if (value != expr.value) {
+            optimized = new Expr.Assign(expr.name, value);
+            optimized.verified = expr.verified;
+        }
+        Expr increment = increment(optimized);
+        return increment != null ? increment : optimized;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        Expr.Binary optimized = expr;
+        if (left != expr.left || right != expr.right) {
+            optimized = new Expr.Binary(left, expr.operator, right);
+            optimized.verified = expr.verified;
+        }
+        if (left instanceof Expr.Literal && right instanceof Expr.Literal) {
+            return literal(optimized);
+        }
+        Expr fused = compare(optimized);
+        return fused != null ? fused : optimized;
+    }
+
+    // A checked `x = x + c` or `x = x - c`, where x and c are both NUMERO or both TIPIK.
+    private Expr increment(Expr.Assign expr) {
+        if (!expr.verified || !(expr.value instanceof Expr.Binary)) return null;
+        Expr.Binary value = (Expr.Binary) expr.value;
+        if (!value.verified || !isVariable(value.left, expr.name) || !(value.right instanceof Expr.Literal)) {
+            return null;
+        }
+        Object constant = ((Expr.Literal) value.right).value;
+        boolean minus = value.operator.type == TokenType.MINUS;
+        if (!minus && value.operator.type != TokenType.PLUS) return null;
+
+        Object delta;
+        if (constant instanceof Integer) {
+            delta = minus ? -(int) constant : (int) constant;
+        } else if (constant instanceof Double) {
+            delta = minus ? -(double) constant : (double) constant;
+        } else {
+            return null;
+        }
+        fused("increment");
+        return new Expr.Increment(expr.name, delta, expr);
+    }
+
+    // `x <op> c` for a comparison, and `x % c == k` or `!=` on NUMERO.
+    private Expr compare(Expr.Binary expr) {
+        if (!(expr.right instanceof Expr.Literal)) return null;
+        Object constant = ((Expr.Literal) expr.right).value;
+        TokenType operator = expr.operator.type;
+
+        switch (operator) {
+            case LESS_THAN:
+            case LESS_THAN_EQUAL:
+            case GREATER_THAN:
+            case GREATER_THAN_EQUAL:
+                // Checked, so x is definite and of the same kind as c.
+                if (!expr.verified) return null;
+                break;
+            case EQUAL_EQUAL:
+            case NOT_EQUAL:
+                Expr.Binary modulo = remainder(expr.left);
+                if (modulo != null && constant instanceof Integer) {
+                    fused("remainder-compare");
+                    return new Expr.Remainder(((Expr.Variable) modulo.left).name,
+                            (int) ((Expr.Literal) modulo.right).value, operator == TokenType.EQUAL_EQUAL,
+                            (int) constant, expr);
+                }
+                break;
+            default:
+                return null;
+        }
+
+        if (!(expr.left instanceof Expr.Variable)) return null;
+        fused("compare-constant");
+        return new Expr.CompareConstant(((Expr.Variable) expr.left).name, operator, constant, expr);
+    }
+
+    // A checked `x % c` on NUMERO with a non-zero literal c.
+    private Expr.Binary remainder(Expr expr) {
+        if (!(expr instanceof Expr.Binary)) return null;
+        Expr.Binary binary = (Expr.Binary) expr;
+        if (binary.operator.type != TokenType.MODULO || !binary.verified
+                || !(binary.left instanceof Expr.Variable) || !(binary.right instanceof Expr.Literal)) {
+            return null;
+        }
+        Object divisor = ((Expr.Literal) binary.right).value;
+        return divisor instanceof Integer && (int) divisor != 0 ? binary : null;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+        if (expression instanceof Expr.Literal) return expression;
+        if (expression == expr.expression) return expr;
+        return new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left == expr.left && right == expr.right) return expr;
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        Expr.Unary optimized = expr;
+        if (right != expr.right) {
+            optimized = new Expr.Unary(expr.operator, right);
+            optimized.verified = expr.verified;
+        }
+        return right instanceof Expr.Literal ? literal(optimized) : optimized;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        if (expr.constant == null) return expr;
+        fused("inline-constant");
+        return expr.constant;
+    }
+
+    @Override
+    public Expr visitInvariantExpr(Expr.Invariant expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitIncrementExpr(Expr.Increment expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitCompareConstantExpr(Expr.CompareConstant expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitRemainderExpr(Expr.Remainder expr) {
+        return expr;
+    }
+
+    @Override
+    public Stmt visitPrintConcatStmt(Stmt.PrintConcat stmt) {
+        return stmt;
+    }
+}
@@ -0,0 +1,254 @@
+package main;
+
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+// Formats values the way IPAKITA displays them into one reusable character
+// buffer, which is encoded into a reusable byte buffer and written to the
+// output stream, so showing a number, character or boolean allocates nothing.
+//
+// The buffer is used as a stack: a caller notes length(), appends, and then
+// prints or takes everything from that mark. Whatever is evaluated in between
+// may print through the same buffer without disturbing the caller's text.
+final class OutputBuffer {
+    private static final char[] TRUE = {'O', 'O'};
+    private static final char[] FALSE = {'D', 'I', 'L', 'I'};
+    private static final char[] NULL = {'n', 'u', 'l', 'l'};
+
+    private static final double[] POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+    // Larger significands may have more than one shortest decimal, which only
+    // Double.toString picks between correctly.
+    private static final long MAX_SIGNIFICAND = 1_000_000_000L;
+
+    private final PrintStream out;
+    // Whether ASCII text can be written to `out` byte for byte.
+    private final boolean ascii;
+    private char[] chars = new char[128];
+    private byte[] bytes = new byte[128];
+    private int length = 0;
+
+    OutputBuffer(PrintStream out) {
+        this.out = out;
+        Charset charset = out.charset();
+        this.ascii = charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.ISO_8859_1)
+                || charset.equals(StandardCharsets.US_ASCII);
+    }
+
+    int length() {
+        return length;
+    }
+
+    void reset(int mark) {
+        length = mark;
+    }
+
+    // Writes the text appended since `mark` and removes it from the buffer.
+    void print(int mark) {
+        int count = length - mark;
+        length = mark;
+        if (ascii) {
+            if (bytes.length < count) bytes = new byte[Math.max(count, bytes.length * 2)];
+            for (int i = 0; i < count; i++) {
+                char c = chars[mark + i];
+                if (c >= 0x80) {
+                    out.print(new String(chars, mark, count));
+                    return;
+                }
+                bytes[i] = (byte) c;
+            }
+            out.write(bytes, 0, count);
+        } else {
+            out.print(new String(chars, mark, count));
+        }
+    }
+
+    // The text appended since `mark`, which is removed from the buffer.
+    String take(int mark) {
+        String text = new String(chars, mark, length - mark);
+        length = mark;
+        return text;
+    }
+
+    void appendTo(Variable variable, int mark) {
+        variable.append(chars, mark, length - mark);
+        length = mark;
+    }
+
+    OutputBuffer append(Object value) {
+        if (value == null) return append(NULL);
+        if (value instanceof String) return append((String) value);
+        if (value instanceof Integer) return append((int) value);
+        if (value instanceof Long) return append((long) value);
+        if (value instanceof Double) return append((double) value);
+        if (value instanceof Character) return append((char) value);
+        if (value instanceof Boolean) return append((boolean) value ? TRUE : FALSE);
+
+        if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) append(',').append(' ');
+                append(array[i]);
+            }
+            return append(']');
+        }
+        if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) append(',').append(' ');
+                append(array[i]);
+            }
+            return append(']');
+        }
+        if (value instanceof char[]) {
+            char[] array = (char[]) value;
+            append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) append(',').append(' ');
+                append(array[i]);
+            }
+            return append(']');
+        }
+        if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            append('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) append(',').append(' ');
+                append(array[i] ? TRUE : FALSE);
+            }
+            return append(']');
+        }
+
+        return append(value.toString());
+    }
+
+    OutputBuffer append(String text) {
+        int count = text.length();
+        ensure(count);
+        text.getChars(0, count, chars, length);
+        length += count;
+        return this;
+    }
+
+    OutputBuffer append(char c) {
+        ensure(1);
+        chars[length++] = c;
+        return this;
+    }
+
+    private OutputBuffer append(char[] text) {
+        ensure(text.length);
+        System.arraycopy(text, 0, chars, length, text.length);
+        length += text.length;
+        return this;
+    }
+
+    OutputBuffer append(int value) {
+        return append((long) value);
+    }
+
+    private OutputBuffer append(long value) {
+        ensure(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) return append(Long.toString(value));
+            chars[length++] = '-';
+            value = -value;
+        }
+        int end = length + digits(value);
+        for (int i = end - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length = end;
+        return this;
+    }
+
+    // The same characters as Double.toString, whose plain notation covers
+    // magnitudes from 10^-3 up to 10^7. Within it the shortest decimal that
+    // reads back as `value` is found by trying one more fraction digit at a
+    // time; m / 10^k is correctly rounded, so it equals the parsed decimal.
+    // Anything else goes through StringBuilder, which formats like toString.
+    OutputBuffer append(double value) {
+        double magnitude = Math.abs(value);
+        if (magnitude == 0) {
+            return append(1 / value < 0 ? "-0.0" : "0.0");
+        }
+        if (!(magnitude >= 1e-3 && magnitude < 1e7)) {
+            return appendSlow(value);
+        }
+
+        long whole = (long) magnitude;
+        if (whole == magnitude) {
+            if (value < 0) append('-');
+            return append(whole).append('.').append('0');
+        }
+        for (int k = 1; k < POWERS.length; k++) {
+            long significand = Math.round(magnitude * POWERS[k]);
+            if (significand >= MAX_SIGNIFICAND) break;
+            if (significand / POWERS[k] == magnitude) {
+                if (value < 0) append('-');
+                return appendDecimal(significand, k);
+            }
+        }
+        return appendSlow(value);
+    }
+
+    private OutputBuffer appendSlow(double value) {
+        StringBuilder text = new StringBuilder(24).append(value);
+        ensure(text.length());
+        text.getChars(0, text.length(), chars, length);
+        length += text.length();
+        return this;
+    }
+
+    // significand * 10^-scale in plain notation, with at least one integer digit.
+    private OutputBuffer appendDecimal(long significand, int scale) {
+        int count = digits(significand);
+        ensure(Math.max(count, scale) + 2);
+        if (count <= scale) {
+            chars[length++] = '0';
+            chars[length++] = '.';
+            for (int i = count; i < scale; i++) {
+                chars[length++] = '0';
+            }
+            int end = length + count;
+            for (int i = end - 1; i >= length; i--) {
+                chars[i] = (char) ('0' + significand % 10);
+                significand /= 10;
+            }
+            length = end;
+        } else {
+            int end = length + count + 1;
+            int point = end - scale - 1;
+            for (int i = end - 1; i >= length; i--) {
+                if (i == point) {
+                    chars[i] = '.';
+                    continue;
+                }
+                chars[i] = (char) ('0' + significand % 10);
+                significand /= 10;
+            }
+            length = end;
+        }
+        return this;
+    }
+
+    private static int digits(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > chars.length) {
+            char[] grown = new char[Math.max(length + extra, chars.length * 2)];
+            System.arraycopy(chars, 0, grown, 0, length);
+            chars = grown;
+        }
+    }
+}
@@ -1,37 +1,122 @@
 package main;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class Parser {
 
-    private static class ParseError extends RuntimeException {
+    static class ParseError extends RuntimeException {
+    }
+
+    // A top-level statement as parsed: its tokens [from, to) and the statements
+    // it produced. `header` marks the declarations right after SUGOD, where one
+    // MUGNA may declare several names.
+    static final class Unit {
+        final int from;
+        final int to;
+        final boolean header;
+        final int line;
+        final List<Stmt> statements;
+
+        Unit(int from, int to, boolean header, int line, List<Stmt> statements) {
+            this.from = from;
+            this.to = to;
+            this.header = header;
+            this.line = line;
+            this.statements = statements;
+        }
     }
 
+    // Parsing a statement looks at most two tokens past its end (KUNG DILI).
+    private static final int LOOKAHEAD = 2;
+
     private final List<Token> tokens;
     private int current = 0;
     private boolean afterVarDeclaration = false;
+    // The function whose body is being parsed, for IBALIK.
+    private Token functionName;
+    private TokenType functionType;
+    private final List<Integer> lines = new ArrayList<>();
+    private final List<Unit> units = new ArrayList<>();
+    // Units of an earlier parse whose tokens are unchanged, by first token.
+    private final Map<Integer, Unit> reusable = new HashMap<>();
+    private int reused = 0;
+
+    // A lazy parser only brace-matches KUNG branches of at least LAZY_TOKENS
+    // tokens, and parses each the first time it runs or validate() reaches it.
+    // Branches inside DUNGAN are always parsed, so they can be checked.
+    private static final int LAZY_TOKENS = 32;
+    private boolean lazy = false;
+    private int concurrent = 0;
+    // Every branch left for later, in the order found; shared with the
+    // parsers of the branches themselves and guarded by itself.
+    private List<Stmt.Deferred> deferred = new ArrayList<>();
 
     Parser(List<Token> tokens) {
         this.tokens = tokens;
     }
 
+    Parser lazy() {
+        lazy = true;
+        return this;
+    }
+
+    // Lets parse() take the statements of `previous` instead of parsing them
+    // again where the tokens are the same. Tokens before `unchanged` are
+    // identical in both lists, as are those from `suffix` in the earlier list
+    // and `suffix + shift` in this one.
+    Parser reusing(Parser previous, int unchanged, int suffix, int shift) {
+        for (Unit unit : previous.units) {
+            if (unit.to + LOOKAHEAD <= unchanged) {
+                reusable.put(unit.from, unit);
+            } else if (unit.from >= suffix) {
+                reusable.put(unit.from + shift,
+                        new Unit(unit.from + shift, unit.to + shift, unit.header, unit.line, unit.statements));
+            }
+        }
+        return this;
+    }
+
     List<Stmt> parse() {
         List<Stmt> statements = new ArrayList<>();
 
         consume(TokenType.BEGIN, "Expecting SUGOD.");
 
-        while (match(TokenType.STRING, TokenType.CHAR, TokenType.INT, TokenType.FLOAT, TokenType.BOOL,
-                TokenType.DECLARATION)) {
+        for (;;) {
+            if (reuse(statements, true)) continue;
+            if (!match(TokenType.STRING, TokenType.CHAR, TokenType.INT, TokenType.FLOAT, TokenType.BOOL,
+                    TokenType.DECLARATION)) {
+                break;
+            }
+            int from = current - 1;
+            int count = statements.size();
+            int line = previous().line;
             statements.addAll(varDeclaration());
+            markUnit(statements, from, count, true, line);
         }
 
         while (!isAtEnd() && !check(TokenType.END)) {
+            if (reuse(statements, false)) continue;
+            int from = current;
+            int count = statements.size();
+            int line = peek().line;
+            if (match(TokenType.FUNCTION)) {
+                statements.add(function());
+                markUnit(statements, from, count, false, line);
+                continue;
+            }
             if (check(TokenType.STRING) || check(TokenType.CHAR) || check(TokenType.INT) || check(TokenType.FLOAT)
                     || check(TokenType.BOOL) || check(TokenType.DECLARATION)) {
                 afterVarDeclaration = true;
             }
             statements.add(statement());
+            markUnit(statements, from, count, false, line);
         }
 
         consume(TokenType.END, "Expecting KATAPUSAN.");
@@ -49,49 +134,176 @@ public class Parser {
         return statements;
     }
 
-    private Expr expression() {
-        return assignment();
+    // Source line each top-level statement starts on, parallel to parse().
+    List<Integer> lines() {
+        return lines;
     }
 
-    private Expr assignment() {
-        Expr expr = or();
+    // Top-level statements taken from an earlier parse.
+    int reused() {
+        return reused;
+    }
 
-        if (match(TokenType.EQUAL)) {
-            Token equals = previous();
-            Expr value = assignment();
+    private void markLines(List<Stmt> statements, int line) {
+        while (lines.size() < statements.size()) {
+            lines.add(line);
+        }
+    }
 
-            if (expr instanceof Expr.Variable) {
-                Token name = ((Expr.Variable) expr).name;
-                return new Expr.Assign(name, value);
-            }
+    private void markUnit(List<Stmt> statements, int from, int count, boolean header, int line) {
+        markLines(statements, line);
+        units.add(new Unit(from, current, header, line, new ArrayList<>(statements.subList(count, statements.size()))));
+    }
+
+    private boolean reuse(List<Stmt> statements, boolean header) {
+        Unit unit = reusable.get(current);
+        if (unit == null || unit.header != header) return false;
+        statements.addAll(unit.statements);
+        markLines(statements, unit.line);
+        units.add(unit);
+        current = unit.to;
+        reused += unit.statements.size();
+        return true;
+    }
 
-            throw error(equals, "Invalid assignment target. Cannot assign to " + expr.getClass().getSimpleName() + ".");
+    List<Stmt> parseStatements() {
+        List<Stmt> statements = new ArrayList<>();
+
+        while (!isAtEnd()) {
+            if (match(TokenType.DECLARATION)) {
+                statements.addAll(varDeclaration());
+            } else if (match(TokenType.FUNCTION)) {
+                statements.add(function());
+            } else {
+                statements.add(statement());
+            }
         }
 
-        return expr;
+        return statements;
+    }
+
+    // Binding strength of each binary operator; all of them are left
+    // associative. Prefix operators bind tighter than any of them, and an open
+    // parenthesis on the operator stack holds off everything before it.
+    private static final int OPEN = 0;
+    private static final int PREFIX = 8;
+
+    private static int precedence(TokenType type) {
+        switch (type) {
+            case OR:
+                return 1;
+            case AND:
+                return 2;
+            case NOT_EQUAL:
+            case EQUAL_EQUAL:
+                return 3;
+            case GREATER_THAN:
+            case GREATER_THAN_EQUAL:
+            case LESS_THAN:
+            case LESS_THAN_EQUAL:
+                return 4;
+            case AMPERSAND:
+                return 5;
+            case PLUS:
+            case MINUS:
+                return 6;
+            case SLASH:
+            case STAR:
+            case MODULO:
+                return 7;
+            default:
+                return -1;
+        }
     }
 
-    private Expr or() {
-        Expr expr = and();
+    // Operator precedence parsing over explicit stacks of operands and pending
+    // operators, rather than a method per precedence level, so neither nested
+    // parentheses nor long chains of operators deepen the Java stack. Only
+    // assignments, arguments and indexes parse their parts recursively.
+    private Expr expression() {
+        List<Expr> operands = new ArrayList<>();
+        List<Token> operators = new ArrayList<>();
+        List<Integer> levels = new ArrayList<>();
+        int open = 0;
+
+        for (;;) {
+            for (;;) {
+                if (match(TokenType.NOT, TokenType.MINUS, TokenType.PLUS)) {
+                    operators.add(previous());
+                    levels.add(PREFIX);
+                } else if (match(TokenType.LEFT_PARENTHESIS)) {
+                    operators.add(previous());
+                    levels.add(OPEN);
+                    open++;
+                } else {
+                    break;
+                }
+            }
+            operands.add(primary());
+
+            for (;;) {
+                reduce(operands, operators, levels, PREFIX);
+                if (match(TokenType.EQUAL)) {
+                    reduce(operands, operators, levels, OPEN + 1);
+                    operands.add(assignment(previous(), operands.remove(operands.size() - 1)));
+                } else if (open > 0 && match(TokenType.RIGHT_PARENTHESIS)) {
+                    reduce(operands, operators, levels, OPEN + 1);
+                    operators.remove(operators.size() - 1);
+                    levels.remove(levels.size() - 1);
+                    open--;
+                    operands.add(new Expr.Grouping(operands.remove(operands.size() - 1)));
+                } else {
+                    break;
+                }
+            }
 
-        while (match(TokenType.OR)) {
-            Token operator = previous();
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
+            int level = precedence(peek().type);
+            if (level < 0) break;
+            reduce(operands, operators, levels, level);
+            operators.add(advance());
+            levels.add(level);
         }
 
-        return expr;
+        if (open > 0) {
+            consume(TokenType.RIGHT_PARENTHESIS, "Expect ')' after expression");
+        }
+        reduce(operands, operators, levels, OPEN + 1);
+        return operands.get(0);
+    }
+
+    // Applies the pending operators binding at least as tightly as `level`.
+    private void reduce(List<Expr> operands, List<Token> operators, List<Integer> levels, int level) {
+        while (!levels.isEmpty() && levels.get(levels.size() - 1) >= level) {
+            Token operator = operators.remove(operators.size() - 1);
+            int pending = levels.remove(levels.size() - 1);
+            Expr right = operands.remove(operands.size() - 1);
+            if (pending == PREFIX) {
+                operands.add(new Expr.Unary(operator, right));
+                continue;
+            }
+            Expr left = operands.remove(operands.size() - 1);
+            if (operator.type == TokenType.OR || operator.type == TokenType.AND) {
+                operands.add(new Expr.Logical(left, operator, right));
+            } else {
+                operands.add(new Expr.Binary(left, operator, right));
+            }
+        }
     }
 
-    private Expr and() {
-        Expr expr = equality();
-        while (match(TokenType.AND)) {
-            Token operator = previous();
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
+    private Expr assignment(Token equals, Expr target) {
+        Expr value = expression();
+
+        if (target instanceof Expr.Variable) {
+            Token name = ((Expr.Variable) target).name;
+            return new Expr.Assign(name, value);
+        }
+
+        if (target instanceof Expr.Index) {
+            Expr.Index index = (Expr.Index) target;
+            return new Expr.IndexAssign(index.name, index.index, value);
         }
 
-        return expr;
+        throw error(equals, "Invalid assignment target. Cannot assign to " + target.getClass().getSimpleName() + ".");
     }
 
     private Stmt statement() {
@@ -117,9 +329,93 @@ public class Parser {
             return forStatement();
         }
 
+        if (match(TokenType.RETURN)) {
+            return returnStatement();
+        }
+
+        if (match(TokenType.CONCURRENT)) {
+            return concurrentStatement();
+        }
+
+        if (match(TokenType.FUNCTION)) {
+            throw error(previous(), "Functions can only be declared at the top level.");
+        }
+
         return expressionStatement();
     }
 
+    // LIHOK [type] name(type param, ...) PUNDOK{ ... }
+    private Stmt.Function function() {
+        TokenType returnType = null;
+        if (matchType()) {
+            returnType = previous().type;
+        }
+        Token name = consume(TokenType.IDENTIFIER, "Expecting function name after LIHOK.");
+        consume(TokenType.LEFT_PARENTHESIS, "Expecting '(' after function name.");
+
+        List<Parameter> params = new ArrayList<>();
+        if (!check(TokenType.RIGHT_PARENTHESIS)) {
+            do {
+                if (!matchType()) {
+                    throw error(peek(), "Expecting a parameter type.");
+                }
+                Token type = previous();
+                params.add(new Parameter(type, consume(TokenType.IDENTIFIER, "Expecting parameter name.")));
+            } while (match(TokenType.COMMA));
+        }
+        consume(TokenType.RIGHT_PARENTHESIS, "Expecting ')' after parameters.");
+        consume(TokenType.BLOCK, "Expecting PUNDOK before function body.");
+        consume(TokenType.LEFT_BRACE, "Expecting '{' after PUNDOK.");
+
+        Token enclosingName = functionName;
+        TokenType enclosingType = functionType;
+        functionName = name;
+        functionType = returnType;
+        try {
+            return new Stmt.Function(name, returnType, params, block());
+        } finally {
+            functionName = enclosingName;
+            functionType = enclosingType;
+        }
+    }
+
+    private boolean matchType() {
+        return match(TokenType.INT, TokenType.FLOAT, TokenType.CHAR, TokenType.BOOL, TokenType.STRING);
+    }
+
+    // A function without a return type takes a bare IBALIK.
+    private Stmt returnStatement() {
+        Token keyword = previous();
+        if (functionName == null) {
+            throw error(keyword, "IBALIK can only be used inside a function.");
+        }
+        if (functionType == null) {
+            return new Stmt.Return(keyword, null, null, false);
+        }
+
+        Expr value = expression();
+        boolean tail = value instanceof Expr.Call
+                && ((Expr.Call) value).name.symbol == functionName.symbol;
+        return new Stmt.Return(keyword, functionType, value, tail);
+    }
+
+    // DUNGAN PUNDOK{ ... } PUNDOK{ ... } ...
+    private Stmt concurrentStatement() {
+        Token keyword = previous();
+        List<List<Stmt>> blocks = new ArrayList<>();
+        do {
+            consume(TokenType.BLOCK, "Expecting PUNDOK after DUNGAN.");
+            consume(TokenType.LEFT_BRACE, "Expecting '{' after PUNDOK.");
+            concurrent++;
+            try {
+                blocks.add(block());
+            } finally {
+                concurrent--;
+            }
+        } while (check(TokenType.BLOCK));
+        return new Stmt.Concurrent(keyword, blocks);
+    }
+
     private Stmt displayStatement() {
         Expr value = expression();
         return new Stmt.Print(value);
@@ -144,7 +440,7 @@ public class Parser {
         consume(TokenType.BLOCK, "Expecting PUNDOK after KUNG condition.");
         consume(TokenType.LEFT_BRACE, "Expecting '{' after PUNDOK.");
 
-        List<Stmt> thenBranch = block();
+        List<Stmt> thenBranch = branch();
 
         // ELSE IF (KUNG DILI)
         List<Expr> elseIfConditions = new ArrayList<>();
@@ -162,7 +458,7 @@ public class Parser {
             consume(TokenType.BLOCK, "Expecting PUNDOK after KUNG DILI condition.");
             consume(TokenType.LEFT_BRACE, "Expecting '{' after PUNDOK.");
 
-            List<Stmt> elseIfBranch = block();
+            List<Stmt> elseIfBranch = branch();
             elseIfBranches.add(elseIfBranch);
         }
 
@@ -176,7 +472,7 @@ public class Parser {
             consume(TokenType.BLOCK, "Expecting PUNDOK after KUNG WALA.");
             consume(TokenType.LEFT_BRACE, "Expecting '{' after PUNDOK.");
 
-            elseBranch = block();
+            elseBranch = branch();
         }
 
         return new Stmt.If(condition, thenBranch, elseIfConditions, elseIfBranches, elseBranch);
@@ -254,6 +550,137 @@ public class Parser {
         return statements;
     }
 
+    // The statements of a KUNG branch, or a single Deferred standing in for them.
+    private List<Stmt> branch() {
+        if (!lazy || concurrent > 0) return block();
+        int end = current;
+        for (int depth = 1; depth > 0; end++) {
+            TokenType type = tokens.get(end).type;
+            if (type == TokenType.EOF) return block();
+            if (type == TokenType.LEFT_BRACE) depth++;
+            if (type == TokenType.RIGHT_BRACE) depth--;
+        }
+        if (end - current < LAZY_TOKENS) return block();
+
+        Stmt.Deferred body = new Stmt.Deferred(this, previous(), current, functionName, functionType);
+        synchronized (deferred) {
+            deferred.add(body);
+        }
+        current = end;
+        return List.of(body);
+    }
+
+    // The statements of `body`, parsed and checked now if they have not been.
+    // A syntax or type error in them stops the run, reported by validate() so
+    // that the errors come out as parse() and the checker would have had them.
+    List<Stmt> body(Stmt.Deferred body) {
+        List<Stmt> statements = body.statements;
+        if (statements == null) statements = parsed(body);
+        if (statements != null && body.typeErrors == null) checked(body);
+        String typeErrors = body.typeErrors;
+        if (statements == null || (typeErrors != null && !typeErrors.isEmpty())) validate();
+        return statements;
+    }
+
+    // The statements of `body`, or null when they have a syntax error.
+    List<Stmt> parsed(Stmt.Deferred body) {
+        synchronized (body) {
+            if (body.statements != null || body.errors != null) return body.statements;
+
+            Parser parser = new Parser(tokens);
+            parser.lazy = true;
+            parser.deferred = deferred;
+            parser.current = body.from;
+            parser.functionName = body.functionName;
+            parser.functionType = body.functionType;
+
+            // Errors are kept for whoever reports them, which may be another thread.
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            Main.Report report = Main.report();
+            Main.setReport(new Main.Report(new PrintStream(errors, true, StandardCharsets.UTF_8)));
+            try {
+                body.statements = parser.block();
+            } catch (ParseError e) {
+                body.errors = errors.toString(StandardCharsets.UTF_8);
+                body.failedAt = parser.current;
+            } finally {
+                Main.setReport(report);
+            }
+            return body.statements;
+        }
+    }
+
+    // Checks the statements of `body` where the checker found the branch,
+    // once it has been both parsed and reached by the checker.
+    private void checked(Stmt.Deferred body) {
+        synchronized (body) {
+            TypeChecker checker = body.checker;
+            if (checker == null || body.statements == null || body.typeErrors != null) return;
+
+            ByteArrayOutputStream errors = new ByteArrayOutputStream();
+            Main.Report report = Main.report();
+            Main.setReport(new Main.Report(new PrintStream(errors, true, StandardCharsets.UTF_8)));
+            try {
+                checker.check(body.statements);
+            } finally {
+                Main.setReport(report);
+            }
+            body.typeErrors = errors.toString(StandardCharsets.UTF_8);
+            body.checker = null;
+        }
+    }
+
+    // Parses every branch left for later, including those found inside others,
+    // and checks those the checker has reached. A branch comes after the one
+    // it is in, so checking the outer one first lets the inner one be checked.
+    void parseDeferred() {
+        for (int i = 0; ; i++) {
+            Stmt.Deferred body;
+            synchronized (deferred) {
+                if (i == deferred.size()) return;
+                body = deferred.get(i);
+            }
+            parsed(body);
+            checked(body);
+        }
+    }
+
+    // Reports the first syntax error in the branches left for later, or else
+    // all of their type errors in program order, and stops the run if there
+    // are any.
+    void validate() {
+        parseDeferred();
+        List<Stmt.Deferred> bodies;
+        synchronized (deferred) {
+            bodies = new ArrayList<>(deferred);
+        }
+        Stmt.Deferred first = null;
+        for (Stmt.Deferred body : bodies) {
+            if (parsed(body) == null && (first == null || body.failedAt < first.failedAt)) {
+                first = body;
+            }
+        }
+        if (first != null) {
+            Main.report().err.print(first.errors);
+            Main.report().hadError = true;
+            throw new ParseError();
+        }
+
+        boolean failed = false;
+        bodies.sort(Comparator.comparingInt(body -> body.from));
+        for (Stmt.Deferred body : bodies) {
+            String typeErrors = body.typeErrors;
+            if (typeErrors != null && !typeErrors.isEmpty()) {
+                Main.report().err.print(typeErrors);
+                failed = true;
+            }
+        }
+        if (failed) {
+            Main.report().hadError = true;
+            throw new ParseError();
+        }
+    }
+
     private void debugPrintTokens(List<Token> tokens) {
         System.out.println("=== DEBUG: TOKENS ===");
         for (Token token : tokens) {
@@ -268,8 +695,12 @@ public class Parser {
         boolean mutable = true;
         List<Token> names = new ArrayList<>();
         List<Expr> initializers = new ArrayList<>();
+        List<Expr> sizes = new ArrayList<>();
 
         if (declaration.type == TokenType.DECLARATION) { // Check for "MUGNA"
+            if (match(TokenType.CONSTANT)) {
+                mutable = false;
+            }
             token = consume(peek().type, "Expecting a variable type after MUGNA (DECLARATION).");
         } else {
            throw error(declaration, "Expecting keyword MUGNA before variable declaration.");
@@ -279,39 +710,67 @@ public class Parser {
             Token name = consume(TokenType.IDENTIFIER, "Expect proper variable declaration.");
             names.add(name);
             Expr initializer = null;
+            Expr size = null;
+
+            if (match(TokenType.LEFT_BRACKET)) {
+                size = expression();
+                consume(TokenType.RIGHT_BRACKET, "Expecting ']' after array size.");
+                if (check(TokenType.EQUAL)) {
+                    throw error(peek(), "Array declarations cannot have an initializer.");
+                }
+                if (!mutable) {
+                    throw error(name, "Arrays cannot be declared PIRMI.");
+                }
+            }
 
             if (match(TokenType.EQUAL)) {
                 initializer = expression();
+            } else if (!mutable) {
+                throw error(name, "Constant '" + name.lexeme + "' must have an initializer.");
             }
 
             initializers.add(initializer);
+            sizes.add(size);
         } while (match(TokenType.COMMA));
 
         List<Stmt> statements = new ArrayList<>();
 
-        switch (token.type) {
-            case CHAR:
-                for (int i = 0; i < names.size(); i++) {
-                    statements.add(new Stmt.Char(names.get(i), initializers.get(i)));
-                }
-                break;
-            case INT:
-                for (int i = 0; i < names.size(); i++) {
-                    statements.add(new Stmt.Int(names.get(i), initializers.get(i)));
-                }
-                break;
-            case FLOAT:
-                for (int i = 0; i < names.size(); i++) {
-                    statements.add(new Stmt.Float(names.get(i), initializers.get(i)));
+        for (int i = 0; i < names.size(); i++) {
+            Token name = names.get(i);
+            Expr initializer = initializers.get(i);
+
+            if (sizes.get(i) != null) {
+                switch (token.type) {
+                    case CHAR:
+                    case INT:
+                    case FLOAT:
+                    case BOOL:
+                        statements.add(new Stmt.Array(token.type, name, sizes.get(i)));
+                        continue;
+                    default:
+                        throw error(declaration, "Unsupported variable type.");
                 }
-                break;
-            case BOOL:
-                for (int i = 0; i < names.size(); i++) {
-                    statements.add(new Stmt.Bool(names.get(i), initializers.get(i)));
-                }
-                break;
-            default:
-                throw error(declaration, "Unsupported variable type.");
+            }
+
+            switch (token.type) {
+                case CHAR:
+                    statements.add(new Stmt.Char(name, initializer, !mutable));
+                    break;
+                case INT:
+                    statements.add(new Stmt.Int(name, initializer, !mutable));
+                    break;
+                case FLOAT:
+                    statements.add(new Stmt.Float(name, initializer, !mutable));
+                    break;
+                case BOOL:
+                    statements.add(new Stmt.Bool(name, initializer, !mutable));
+                    break;
+                case STRING:
+                    statements.add(new Stmt.Text(name, initializer, !mutable));
+                    break;
+                default:
+                    throw error(declaration, "Unsupported variable type.");
+            }
         }
 
         return statements;
@@ -322,74 +781,6 @@ public class Parser {
         return new Stmt.Expression(expr);
     }
 
-    private Expr equality() {
-        Expr expr = comparison();
-        while (match(TokenType.NOT_EQUAL, TokenType.EQUAL_EQUAL)) {
-            Token operator = previous();
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-        return expr;
-    }
-
-    private Expr comparison() {
-        Expr expr = term();
-        while (match(TokenType.GREATER_THAN, TokenType.GREATER_THAN_EQUAL, TokenType.LESS_THAN,
-                TokenType.LESS_THAN_EQUAL)) {
-            Token operator = previous();
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr term() {
-        Expr expr = addition();
-
-        while (match(TokenType.AMPERSAND)) {
-            Token operator = previous();
-            Expr right = addition();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr addition() {
-        Expr expr = factor();
-
-        while (match(TokenType.PLUS, TokenType.MINUS)) {
-            Token operator = previous();
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-
-    private Expr factor() {
-        Expr expr = unary();
-        while (match(TokenType.SLASH, TokenType.STAR, TokenType.MODULO)) {
-            Token operator = previous();
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr unary() {
-        if (match(TokenType.NOT, TokenType.MINUS, TokenType.PLUS)) {
-            Token operator = previous();
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
-        }
-
-        return primary();
-    }
-
     private Expr primary() {
         if (match(TokenType.TRUE_LITERAL))
             return new Expr.Literal(true);
@@ -400,13 +791,30 @@ public class Parser {
         if (match(TokenType.STRING_LITERAL, TokenType.CHAR_LITERAL,
                 TokenType.INT_LITERAL, TokenType.FLOAT_LITERAL, TokenType.DOLLAR_SIGN))
             return new Expr.Literal(previous().literal);
-        if (match(TokenType.LEFT_PARENTHESIS)) {
-            Expr expr = expression();
-            consume(TokenType.RIGHT_PARENTHESIS, "Expect ')' after expression");
-            return new Expr.Grouping(expr);
-        }
         if (match(TokenType.IDENTIFIER)) {
-            return new Expr.Variable(previous());
+            Token name = previous();
+            if (match(TokenType.LEFT_PARENTHESIS)) {
+                List<Expr> arguments = new ArrayList<>();
+                if (!check(TokenType.RIGHT_PARENTHESIS)) {
+                    do {
+                        arguments.add(expression());
+                    } while (match(TokenType.COMMA));
+                }
+                consume(TokenType.RIGHT_PARENTHESIS, "Expecting ')' after arguments.");
+                return new Expr.Call(name, arguments);
+            }
+            if (match(TokenType.LEFT_BRACKET)) {
+                Expr index = expression();
+                consume(TokenType.RIGHT_BRACKET, "Expecting ']' after array index.");
+                return new Expr.Index(name, index);
+            }
+            return new Expr.Variable(name);
+        }
+        if (match(TokenType.LENGTH)) {
+            consume(TokenType.LEFT_PARENTHESIS, "Expecting '(' after GIDAKON.");
+            Token name = consume(TokenType.IDENTIFIER, "Expecting array name in GIDAKON.");
+            consume(TokenType.RIGHT_PARENTHESIS, "Expecting ')' after array name.");
+            return new Expr.Length(name);
         }
 
         String message = "Expect expression.";
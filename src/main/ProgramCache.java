@@ -0,0 +1,155 @@
+package main;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Programs the daemon has already scanned, parsed, checked and optimized, by
+// source. A program is immutable once loaded, so any number of interpreters
+// may run it at once.
+//
+// Lookups never lock: the map is concurrent and recency is a stamp on each
+// entry. The first request for a source loads it and any others for the same
+// source wait for that load instead of repeating it. Least recently used
+// programs are evicted once there are more than `maxEntries` or their sources
+// add up to more than `maxWeight` characters.
+final class ProgramCache {
+
+    // A loaded program, or the errors that stopped it from loading, which a
+    // run writes out again with the same exit code.
+    static final class Program {
+        final List<Stmt> statements;
+        final String errors;
+        final int code;
+
+        Program(List<Stmt> statements, String errors, int code) {
+            this.statements = statements;
+            this.errors = errors;
+            this.code = code;
+        }
+    }
+
+    private static final class Entry {
+        final CompletableFuture<Program> program = new CompletableFuture<>();
+        final long weight;
+        volatile long used;
+
+        Entry(long weight, long used) {
+            this.weight = weight;
+            this.used = used;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong weight = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong loadNanos = new AtomicLong();
+
+    ProgramCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    Program get(String source) {
+        Entry entry = entries.get(source);
+        if (entry != null) {
+            hits.incrementAndGet();
+            entry.used = clock.incrementAndGet();
+            return entry.program.join();
+        }
+
+        Entry created = new Entry(source.length(), clock.incrementAndGet());
+        entry = entries.putIfAbsent(source, created);
+        if (entry != null) {
+            // Another thread got there first and is loading it.
+            hits.incrementAndGet();
+            entry.used = clock.incrementAndGet();
+            return entry.program.join();
+        }
+
+        misses.incrementAndGet();
+        weight.addAndGet(created.weight);
+        long start = System.nanoTime();
+        try {
+            created.program.complete(load(source));
+        } catch (RuntimeException | Error e) {
+            entries.remove(source, created);
+            weight.addAndGet(-created.weight);
+            created.program.completeExceptionally(e);
+            throw e;
+        } finally {
+            loadNanos.addAndGet(System.nanoTime() - start);
+        }
+        evict();
+        return created.program.join();
+    }
+
+    // Runs the stages before interpretation with errors going to a buffer.
+    private static Program load(String source) {
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        Main.Report outer = Main.report();
+        Main.Report report = new Main.Report(new PrintStream(errors, true, StandardCharsets.UTF_8));
+        Main.setReport(report);
+        try {
+            List<Token> tokens = new Scanner(source, new SymbolTable()).scanTokens();
+            List<Stmt> statements = new Parser(tokens).parse();
+            new TypeChecker().check(statements);
+            if (!report.hadError && !report.hadRuntimeError) {
+                return new Program(List.copyOf(new Optimizer().optimize(statements)), "", 0);
+            }
+        } catch (StackOverflowError e) {
+            Main.tooDeep();
+        } catch (RuntimeException e) {
+            // Already reported as a syntax error.
+        } finally {
+            Main.setReport(outer);
+        }
+        return new Program(null, errors.toString(StandardCharsets.UTF_8), report.hadError ? 65 : 70);
+    }
+
+    // Drops least recently used programs until both limits hold again. Only
+    // the thread that loaded a program comes here, and one at a time.
+    private synchronized void evict() {
+        while (entries.size() > maxEntries || weight.get() > maxWeight) {
+            String oldest = null;
+            Entry victim = null;
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                Entry entry = candidate.getValue();
+                if (entry.program.isDone() && (victim == null || entry.used < victim.used)) {
+                    oldest = candidate.getKey();
+                    victim = entry;
+                }
+            }
+            if (victim == null) return;
+            if (entries.remove(oldest, victim)) {
+                weight.addAndGet(-victim.weight);
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    // One `name value` line per counter.
+    String stats() {
+        long loads = misses.get();
+        double loadMillis = loadNanos.get() / 1e6;
+        return "entries " + entries.size() + "\n"
+                + "weight " + weight.get() + "\n"
+                + "hits " + hits.get() + "\n"
+                + "misses " + loads + "\n"
+                + "evictions " + evictions.get() + "\n"
+                + "load_ms_total " + String.format(Locale.ROOT, "%.3f", loadMillis) + "\n"
+                + "load_ms_mean " + String.format(Locale.ROOT, "%.3f", loads == 0 ? 0.0 : loadMillis / loads) + "\n";
+    }
+}
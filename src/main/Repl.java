@@ -0,0 +1,226 @@
+package main;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+// Interactive session. Input is collected until every PUNDOK and parenthesis is
+// closed, then only that chunk is scanned, checked, optimized and run against
+// the session's interpreter, so earlier lines are never processed again. A
+// chunk ending in a KUNG or KUNG DILI body waits for the next line, which runs
+// it unless it goes on with KUNG DILI or KUNG WALA.
+public class Repl {
+    private static final Pattern CONTINUES_CHAIN = Pattern.compile("\\s*KUNG\\s+(DILI|WALA)\\b");
+
+    private final Interpreter interpreter;
+    private final SymbolTable symbols = new SymbolTable();
+    private final TypeChecker checker = new TypeChecker();
+
+    Repl(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    void run(BufferedReader reader) throws IOException {
+        StringBuilder pending = new StringBuilder();
+        // Session line numbers, so errors point at the line as typed.
+        int lines = 0;
+        int first = 1;
+        // The chunk ends with a KUNG or KUNG DILI body, which the next line may
+        // continue with KUNG DILI or KUNG WALA.
+        boolean chain = false;
+        for (;;) {
+            System.out.print(pending.length() == 0 ? "> " : "... ");
+            String line = reader.readLine();
+            if (chain && (line == null || !CONTINUES_CHAIN.matcher(line).lookingAt())) {
+                Main.report().hadError = false;
+                List<Token> tokens = new Scanner(pending.toString(), symbols, first).scanTokens();
+                pending.setLength(0);
+                eval(tokens);
+            }
+            chain = false;
+            if (line == null)
+                break;
+
+            lines++;
+            if (pending.length() == 0) {
+                first = lines;
+            }
+            pending.append(line).append('\n');
+            Main.report().hadError = false;
+            List<Token> tokens = new Scanner(pending.toString(), symbols, first).scanTokens();
+            if (!Main.report().hadError && isOpen(tokens))
+                continue;
+            if (!Main.report().hadError && endsBranch(tokens)) {
+                chain = true;
+                continue;
+            }
+
+            pending.setLength(0);
+            if (!Main.report().hadError) {
+                eval(tokens);
+            }
+        }
+    }
+
+    void eval(List<Token> tokens) {
+        List<Stmt> statements;
+        try {
+            statements = new Parser(tokens).parseStatements();
+        } catch (RuntimeException e) {
+            return;
+        }
+
+        // Top-level declarations replace earlier ones instead of failing.
+        // Only the entries the chunk changes are saved, so a line costs the same
+        // however long the session has run.
+        checker.begin();
+        for (Stmt statement : statements) {
+            Token name = declaredName(statement);
+            if (name != null) {
+                checker.forget(name);
+            }
+            if (statement instanceof Stmt.Function) {
+                checker.forgetFunction(((Stmt.Function) statement).name);
+            }
+        }
+        checker.check(statements);
+        if (Main.report().hadError) {
+            checker.rollback();
+            return;
+        }
+
+        for (Stmt statement : statements) {
+            Token name = declaredName(statement);
+            if (name != null) {
+                interpreter.globals.undefine(name);
+            }
+        }
+
+        Main.report().hadRuntimeError = false;
+        interpreter.interpretStatements(new Optimizer().optimize(statements));
+        if (interpreter.takeDisplay()) {
+            System.out.println();
+        }
+        // A failed chunk may have stopped before its assignments ran.
+        if (Main.report().hadRuntimeError) {
+            checker.rollback();
+        } else {
+            checker.commit();
+        }
+    }
+
+    private static Token declaredName(Stmt statement) {
+        if (statement instanceof Stmt.Int) return ((Stmt.Int) statement).name;
+        if (statement instanceof Stmt.Float) return ((Stmt.Float) statement).name;
+        if (statement instanceof Stmt.Char) return ((Stmt.Char) statement).name;
+        if (statement instanceof Stmt.Bool) return ((Stmt.Bool) statement).name;
+        if (statement instanceof Stmt.Array) return ((Stmt.Array) statement).name;
+        if (statement instanceof Stmt.Text) return ((Stmt.Text) statement).name;
+        return null;
+    }
+
+    // A chunk is still open while braces or parentheses are unbalanced, while it
+    // ends in an operator or keyword that needs more input, or while a KUNG,
+    // ALANG SA or LIHOK header is still waiting for its PUNDOK.
+    static boolean isOpen(List<Token> tokens) {
+        int depth = 0;
+        for (Token token : tokens) {
+            switch (token.type) {
+                case LEFT_BRACE:
+                case LEFT_PARENTHESIS:
+                    depth++;
+                    break;
+                case RIGHT_BRACE:
+                case RIGHT_PARENTHESIS:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (depth > 0)
+            return true;
+
+        int last = tokens.size() - 2;
+        if (last < 0)
+            return false;
+
+        switch (tokens.get(last).type) {
+            case BLOCK:
+            case COLON:
+            case COMMA:
+            case EQUAL:
+            case AMPERSAND:
+            case PLUS:
+            case MINUS:
+            case STAR:
+            case SLASH:
+            case MODULO:
+            case AND:
+            case OR:
+            case NOT:
+            case IF:
+            case ELSE:
+            case FOR:
+            case THE:
+            case DECLARATION:
+            case FUNCTION:
+                return true;
+            case RIGHT_PARENTHESIS:
+                return isHeader(tokens, last);
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isHeader(List<Token> tokens, int close) {
+        return header(tokens, close) != null;
+    }
+
+    // The keyword of the KUNG, KUNG DILI, ALANG SA or LIHOK header whose
+    // parentheses close at `close`, as IF, THE or FUNCTION, or null.
+    private static TokenType header(List<Token> tokens, int close) {
+        int depth = 0;
+        for (int i = close; i >= 0; i--) {
+            TokenType type = tokens.get(i).type;
+            if (type == TokenType.RIGHT_PARENTHESIS) depth++;
+            if (type == TokenType.LEFT_PARENTHESIS && --depth == 0) {
+                if (i == 0) return null;
+                TokenType before = tokens.get(i - 1).type;
+                if (before == TokenType.NOT) {
+                    return i >= 2 && tokens.get(i - 2).type == TokenType.IF ? TokenType.IF : null;
+                }
+                if (before == TokenType.IDENTIFIER) {
+                    // LIHOK [type] name(...)
+                    boolean function = (i >= 2 && tokens.get(i - 2).type == TokenType.FUNCTION)
+                            || (i >= 3 && tokens.get(i - 3).type == TokenType.FUNCTION);
+                    return function ? TokenType.FUNCTION : null;
+                }
+                return before == TokenType.IF || before == TokenType.THE ? before : null;
+            }
+        }
+        return null;
+    }
+
+    // Whether the chunk ends with the PUNDOK of a KUNG or KUNG DILI, rather
+    // than of a KUNG WALA or anything else.
+    static boolean endsBranch(List<Token> tokens) {
+        int close = tokens.size() - 2;
+        if (close < 0 || tokens.get(close).type != TokenType.RIGHT_BRACE)
+            return false;
+
+        int depth = 0;
+        for (int i = close; i >= 0; i--) {
+            TokenType type = tokens.get(i).type;
+            if (type == TokenType.RIGHT_BRACE) depth++;
+            if (type == TokenType.LEFT_BRACE && --depth == 0) {
+                // KUNG (...) PUNDOK{
+                return i >= 2 && tokens.get(i - 1).type == TokenType.BLOCK
+                        && tokens.get(i - 2).type == TokenType.RIGHT_PARENTHESIS
+                        && header(tokens, i - 2) == TokenType.IF;
+            }
+        }
+        return false;
+    }
+}
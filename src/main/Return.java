@@ -0,0 +1,17 @@
+package main;
+
+// Unwinds a function body on IBALIK. It is control flow rather than an error,
+// so it carries no stack trace and the interpreter reuses a single instance.
+class Return extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    // Never serialized; it only lives while a call unwinds.
+    transient Object value;
+    // Set for a self tail call, whose arguments are rebound in the current frame.
+    transient Object[] arguments;
+    boolean verified;
+
+    Return() {
+        super(null, null, false, false);
+    }
+}
@@ -0,0 +1,200 @@
+package main;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Grows one Workload parameter and records the time and peak heap of every
+// phase at each size, so a phase that stops scaling linearly stands out.
+//
+//   java main.Scaling --vary <parameter> [--from <n>] [--to <n>] [--factor <n>] [--closures | --instrumented] [--<parameter> <n> ...]
+//
+// The other parameters keep the values given, or Workload's defaults.
+// --instrumented runs on an InstrumentedInterpreter with a listener that does
+// nothing, so its run column against a plain one is the cost of the hooks. Each size
+// runs on the same large stack as Main, so -Xmx sets how far depth can go.
+public class Scaling {
+    private static final String[] PHASES = { "generate", "scan", "parse", "check", "optimize", "compile", "run" };
+
+    private static final List<MemoryPoolMXBean> heap = new ArrayList<>();
+
+    static {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) heap.add(pool);
+        }
+    }
+
+    // Time and peak heap of each phase for one size; the phases after a
+    // failed one are not run.
+    private static final class Row {
+        final int value;
+        int lines;
+        final long[] nanos = new long[PHASES.length];
+        final long[] peak = new long[PHASES.length];
+        int phases = 0;
+        String failure;
+
+        Row(int value) {
+            this.value = value;
+        }
+    }
+
+    public static void main(String[] args) {
+        Workload.Shape shape = new Workload.Shape();
+        String vary = null;
+        int from = 1000;
+        int to = 64_000;
+        int factor = 2;
+        boolean closures = false;
+        boolean instrumented = false;
+        for (int i = 0; i < args.length; i++) {
+            int next;
+            if (args[i].equals("--vary") && i + 1 < args.length) {
+                vary = args[++i];
+            } else if (args[i].equals("--from") && i + 1 < args.length) {
+                from = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--to") && i + 1 < args.length) {
+                to = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--factor") && i + 1 < args.length) {
+                factor = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--closures")) {
+                closures = true;
+            } else if (args[i].equals("--instrumented")) {
+                instrumented = true;
+            } else if ((next = shape.parse(args, i)) >= 0) {
+                i = next;
+            } else {
+                usage();
+            }
+        }
+        if (vary == null || from < 1 || to < from || factor < 2 || closures && instrumented) usage();
+        try {
+            shape.get(vary);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(64);
+        }
+
+        // Once untimed, so the first row does not pay for class loading and JIT.
+        Workload.Shape warmup = shape.copy();
+        warmup.set(vary, from);
+        measure(warmup, vary, closures, instrumented);
+
+        List<Row> rows = new ArrayList<>();
+        System.out.printf("%12s %9s", vary, "lines");
+        for (String phase : PHASES) {
+            if (phase.equals("compile") && !closures) continue;
+            System.out.printf(" %18s", phase);
+        }
+        System.out.println();
+        for (long value = from; value <= to; value *= factor) {
+            Workload.Shape current = shape.copy();
+            current.set(vary, (int) value);
+            Row row = measure(current, vary, closures, instrumented);
+            rows.add(row);
+            print(row, closures);
+        }
+        growth(rows, closures);
+    }
+
+    private static void usage() {
+        System.out.println("Usage: scaling --vary <parameter> [--from <n>] [--to <n>] [--factor <n>] [--closures | --instrumented]"
+                + " [--<parameter> <n> ...]");
+        System.exit(64);
+    }
+
+    private static Row measure(Workload.Shape shape, String vary, boolean closures, boolean instrumented) {
+        return Main.onLargeStack(() -> measureHere(shape, vary, closures, instrumented));
+    }
+
+    private static Row measureHere(Workload.Shape shape, String vary, boolean closures, boolean instrumented) {
+        Row row = new Row(shape.get(vary));
+        PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+        Main.Report report = new Main.Report(discard);
+        Main.setReport(report);
+        try {
+            String source = phase(row, () -> Workload.source(shape));
+            String input = Workload.input(shape);
+            row.lines = (int) source.chars().filter(c -> c == '\n').count();
+            List<Token> tokens = phase(row, () -> new Scanner(source, new SymbolTable()).scanTokens());
+            List<Stmt> parsed = phase(row, () -> new Parser(tokens).parse());
+            phase(row, () -> {
+                new TypeChecker().check(parsed);
+                return null;
+            });
+            if (report.hadError) throw new IllegalStateException("the generated program has errors");
+            List<Stmt> statements = phase(row, () -> new Optimizer().optimize(parsed));
+            Compiler.Action[] compiled = phase(row, () -> closures ? new Compiler().compile(statements) : null);
+            phase(row, () -> {
+                Interpreter interpreter = instrumented
+                        ? new InstrumentedInterpreter(new Environment(), discard, discard, new ExecutionListener() {
+                        })
+                        : new Interpreter(new Environment(), discard, discard);
+                interpreter.setInput(InputSource.lines(List.of(input.split("\n"))));
+                interpreter.interpret(statements, compiled, 0, -1, null);
+                return null;
+            });
+            if (report.hadRuntimeError) throw new IllegalStateException("the generated program failed");
+        } catch (RuntimeException | StackOverflowError | OutOfMemoryError e) {
+            row.failure = PHASES[row.phases] + " failed: " + (e.getMessage() == null ? e.getClass().getSimpleName()
+                    : e.getMessage());
+        } finally {
+            Main.setReport(null);
+        }
+        return row;
+    }
+
+    // Runs the next phase of `row` after a collection, so the peak it records
+    // is what earlier phases left live plus what this one needed.
+    private static <T> T phase(Row row, Supplier<T> work) {
+        System.gc();
+        for (MemoryPoolMXBean pool : heap) {
+            pool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        T result = work.get();
+        row.nanos[row.phases] = System.nanoTime() - start;
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        row.peak[row.phases] = peak;
+        row.phases++;
+        return result;
+    }
+
+    private static void print(Row row, boolean closures) {
+        System.out.printf("%12d %9d", row.value, row.lines);
+        for (int p = 0; p < row.phases; p++) {
+            if (PHASES[p].equals("compile") && !closures) continue;
+            System.out.printf(" %9.1fms %5dMB", row.nanos[p] / 1e6, row.peak[p] >> 20);
+        }
+        System.out.println();
+        if (row.failure != null) System.out.println("  " + row.failure);
+    }
+
+    // How much each phase slowed down against how much the program grew,
+    // between the first and last rows that reached it.
+    private static void growth(List<Row> rows, boolean closures) {
+        if (rows.size() < 2) return;
+        Row first = rows.get(0);
+        System.out.println();
+        for (int p = 0; p < PHASES.length; p++) {
+            if (PHASES[p].equals("compile") && !closures) continue;
+            Row last = null;
+            for (Row row : rows) {
+                if (row.phases > p) last = row;
+            }
+            if (first.phases <= p || last == first) continue;
+            double time = (double) last.nanos[p] / Math.max(1, first.nanos[p]);
+            double size = (double) last.lines / Math.max(1, first.lines);
+            System.out.printf("%-9s time x%.1f for lines x%.1f%s%n", PHASES[p], time, size,
+                    time > 2 * size ? "  (worse than linear)" : "");
+        }
+    }
+}
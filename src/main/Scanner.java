@@ -7,6 +7,7 @@ import java.util.Map;
 
 public class Scanner {
     private final String source;
+    private final SymbolTable symbols;
     private final List<Token> tokens = new ArrayList<>();
     private int start = 0;
     private int current = 0;
@@ -23,6 +24,7 @@ public class Scanner {
         keywords.put("NUMERO", TokenType.INT);
         keywords.put("TIPIK", TokenType.FLOAT);
         keywords.put("TINUOD", TokenType.BOOL);
+        keywords.put("PULONG", TokenType.STRING);
 
         keywords.put("KUNG", TokenType.IF);
         keywords.put("WALA", TokenType.ELSE);
@@ -36,6 +38,11 @@ public class Scanner {
 
         keywords.put("MUGNA", TokenType.DECLARATION);
         keywords.put("PUNDOK", TokenType.BLOCK);
+        keywords.put("GIDAKON", TokenType.LENGTH);
+        keywords.put("LIHOK", TokenType.FUNCTION);
+        keywords.put("IBALIK", TokenType.RETURN);
+        keywords.put("DUNGAN", TokenType.CONCURRENT);
+        keywords.put("PIRMI", TokenType.CONSTANT);
 
         keywords.put("++", TokenType.PLUS_PLUS);
         keywords.put("--", TokenType.MINUS_MINUS);
@@ -43,7 +50,19 @@ public class Scanner {
 
 
     Scanner(String source) {
+        this(source, new SymbolTable());
+    }
+
+    Scanner(String source, SymbolTable symbols) {
+        this(source, symbols, 1);
+    }
+
+    // Scans `source` as the lines of a larger file starting at `line`. Strings
+    // and comments end at a newline, so whole lines can be scanned on their own.
+    Scanner(String source, SymbolTable symbols, int line) {
         this.source = source;
+        this.symbols = symbols;
+        this.line = line;
     }
 
     List<Token> scanTokens() {
@@ -69,13 +88,15 @@ public class Scanner {
                 addToken(TokenType.RIGHT_PARENTHESIS);
                 break;
             case '[':
-                if (peekNext() == ']') {
+                if (isAfterIdentifier()) {
+                    addToken(TokenType.LEFT_BRACKET);
+                } else if (peekNext() == ']') {
                     char escapedCharacter = advance();
                     start += 1;
                     addToken(TokenType.CHAR_LITERAL, escapedCharacter);
                     advance();
                 } else {
-                    addToken(TokenType.RIGHT_BRACKET);
+                    addToken(TokenType.LEFT_BRACKET);
                 }
                 break;
             case ']':
@@ -189,6 +210,13 @@ public class Scanner {
         }
     }
 
+    // `name[i]` indexes an array; anywhere else `[x]` is an escaped character.
+    private boolean isAfterIdentifier() {
+        if (start == 0 || tokens.isEmpty()) return false;
+        Token last = tokens.get(tokens.size() - 1);
+        return last.type == TokenType.IDENTIFIER && isAlphaNumeric(source.charAt(start - 1));
+    }
+
     private boolean isAtLineStart() {
         return start == 0 || source.charAt(start - 1) == '\n';
     }
@@ -310,7 +338,7 @@ public class Scanner {
         if (isFloat(value)) {
             addToken(TokenType.FLOAT_LITERAL, Double.parseDouble(value));
         } else {
-            addToken(TokenType.INT_LITERAL, Integer.parseInt(value));
+            addToken(TokenType.INT_LITERAL, Arithmetic.parse(value));
         }
     }
 
@@ -323,7 +351,9 @@ public class Scanner {
         TokenType type = keywords.get(text);
 
         if (type == null) {
-            type = TokenType.IDENTIFIER;
+            int symbol = symbols.intern(text);
+            tokens.add(new Token(TokenType.IDENTIFIER, symbols.name(symbol), null, line, symbol));
+            return;
         }
 
         addToken(type);
@@ -0,0 +1,214 @@
+package main;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Interpreter state between two top-level statements: the globals with their
+// declared types and values, the defined functions, and whether anything has
+// been displayed yet. A snapshot never changes once taken, so any number of
+// interpreters can be forked from it, each copying a variable only when it
+// first writes it.
+//
+// Written snapshots hold only the globals. Functions are declarations, so they
+// are hoisted again from the program when it is resumed.
+public class Snapshot {
+    private static final int MAGIC = 0x42535953; // "BSYS"
+    private static final int VERSION = 2;
+
+    private static final TokenType[] TYPES = {
+            TokenType.INT, TokenType.FLOAT, TokenType.CHAR, TokenType.BOOL, TokenType.STRING, TokenType.ARRAY
+    };
+
+    private static final int NULL = 0, INT = 1, FLOAT = 2, CHAR = 3, BOOL = 4, STRING = 5,
+            INTS = 6, FLOATS = 7, CHARS = 8, BOOLS = 9, LONG = 10, BIG = 11;
+
+    // Index of the top-level statement to run next.
+    final int position;
+    final Environment globals;
+    final Stmt.Function[] functions;
+    final boolean hasDisplay;
+
+    Snapshot(int position, Environment globals, Stmt.Function[] functions, boolean hasDisplay) {
+        this.position = position;
+        this.globals = globals;
+        this.functions = functions;
+        this.hasDisplay = hasDisplay;
+    }
+
+    Interpreter fork(PrintStream out, PrintStream err) {
+        return new Interpreter(this, out, err);
+    }
+
+    // `program` fingerprints the source, so a snapshot is only resumed into the
+    // program it was taken from.
+    void write(OutputStream stream, long program, SymbolTable symbols) throws IOException {
+        GZIPOutputStream gzip = new GZIPOutputStream(stream);
+        DataOutputStream out = new DataOutputStream(gzip);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(program);
+        out.writeInt(position);
+        out.writeBoolean(hasDisplay);
+
+        List<Variable> variables = new ArrayList<>();
+        List<Integer> names = new ArrayList<>();
+        globals.forEach((variable, symbol) -> {
+            variables.add(variable);
+            names.add(symbol);
+        });
+
+        out.writeInt(variables.size());
+        for (int i = 0; i < variables.size(); i++) {
+            out.writeUTF(symbols.name(names.get(i)));
+            out.writeByte(typeIndex(variables.get(i).getType()));
+            out.writeBoolean(variables.get(i).isMutable());
+            writeValue(out, variables.get(i).getValue());
+        }
+        out.flush();
+        gzip.finish();
+    }
+
+    static Snapshot read(InputStream stream, long program, SymbolTable symbols) throws IOException {
+        DataInputStream in = new DataInputStream(new GZIPInputStream(stream));
+        if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+            throw new IOException("Not a snapshot file.");
+        }
+        if (in.readLong() != program) {
+            throw new IOException("Snapshot was taken from a different program.");
+        }
+        int position = in.readInt();
+        boolean hasDisplay = in.readBoolean();
+
+        Environment globals = new Environment();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            Token token = new Token(TokenType.IDENTIFIER, name, null, 0, symbols.intern(name));
+            TokenType type = TYPES[in.readUnsignedByte()];
+            boolean mutable = in.readBoolean();
+            globals.define(token, readValue(in), type, mutable);
+        }
+        return new Snapshot(position, globals.freeze(), new Stmt.Function[0], hasDisplay);
+    }
+
+    private static int typeIndex(TokenType type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i] == type) return i;
+        }
+        throw new IllegalStateException("Unexpected variable type " + type);
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof BigInteger) {
+            byte[] bytes = ((BigInteger) value).toByteArray();
+            out.writeByte(BIG);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Double) {
+            out.writeByte(FLOAT);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Character) {
+            out.writeByte(CHAR);
+            out.writeChar((Character) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOL);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            // writeUTF is limited to 64KB, which a built-up report can exceed.
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof int[]) {
+            int[] array = (int[]) value;
+            out.writeByte(INTS);
+            out.writeInt(array.length);
+            for (int element : array) out.writeInt(element);
+        } else if (value instanceof double[]) {
+            double[] array = (double[]) value;
+            out.writeByte(FLOATS);
+            out.writeInt(array.length);
+            for (double element : array) out.writeDouble(element);
+        } else if (value instanceof char[]) {
+            char[] array = (char[]) value;
+            out.writeByte(CHARS);
+            out.writeInt(array.length);
+            for (char element : array) out.writeChar(element);
+        } else if (value instanceof boolean[]) {
+            boolean[] array = (boolean[]) value;
+            out.writeByte(BOOLS);
+            out.writeInt(array.length);
+            for (boolean element : array) out.writeBoolean(element);
+        } else {
+            throw new IllegalStateException("Unexpected value " + value);
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        int tag = in.readUnsignedByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case BIG: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new BigInteger(bytes);
+            }
+            case FLOAT:
+                return in.readDouble();
+            case CHAR:
+                return in.readChar();
+            case BOOL:
+                return in.readBoolean();
+            case STRING: {
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case INTS: {
+                int[] array = new int[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = in.readInt();
+                return array;
+            }
+            case FLOATS: {
+                double[] array = new double[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = in.readDouble();
+                return array;
+            }
+            case CHARS: {
+                char[] array = new char[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = in.readChar();
+                return array;
+            }
+            case BOOLS: {
+                boolean[] array = new boolean[in.readInt()];
+                for (int i = 0; i < array.length; i++) array[i] = in.readBoolean();
+                return array;
+            }
+            default:
+                throw new IOException("Corrupt snapshot value tag " + tag + ".");
+        }
+    }
+}
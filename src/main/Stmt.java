@@ -1,6 +1,7 @@
 package main;
 
 import java.util.List;
+import java.util.Map;
 
 abstract class Stmt {
     interface Visitor<R> {
@@ -16,6 +17,10 @@ abstract class Stmt {
 
         R visitForStmt(For stmt);
 
+        R visitCountedForStmt(CountedFor stmt);
+
+        R visitSwitchStmt(Switch stmt);
+
         R visitIntStmt(Int stmt);
 
         R visitFloatStmt(Float stmt);
@@ -23,6 +28,22 @@ abstract class Stmt {
         R visitCharStmt(Char stmt);
 
         R visitBoolStmt(Bool stmt);
+
+        R visitArrayStmt(Array stmt);
+
+        R visitTextStmt(Text stmt);
+
+        R visitAppendStmt(Append stmt);
+
+        R visitFunctionStmt(Function stmt);
+
+        R visitReturnStmt(Return stmt);
+
+        R visitPrintConcatStmt(PrintConcat stmt);
+
+        R visitConcurrentStmt(Concurrent stmt);
+
+        R visitDeferredStmt(Deferred stmt);
     }
 
     static class Block extends Stmt {
@@ -102,10 +123,15 @@ abstract class Stmt {
 
     static class For extends Stmt {
         For(Stmt initializer, Expr condition, Expr increment, List<Stmt> body) {
+            this(initializer, condition, increment, body, List.of());
+        }
+
+        For(Stmt initializer, Expr condition, Expr increment, List<Stmt> body, List<Expr.Invariant> invariants) {
             this.initializer = initializer;
             this.condition = condition;
             this.increment = increment;
             this.body = body;
+            this.invariants = invariants;
         }
 
         @Override
@@ -117,13 +143,74 @@ abstract class Stmt {
         final Expr condition;
         final Expr increment;
         final List<Stmt> body;
+        final List<Expr.Invariant> invariants;
     }
 
+    static class CountedFor extends Stmt {
+        CountedFor(For loop, Token name, TokenType operator, Expr bound, int step, boolean observed,
+                   boolean scoped, boolean independent) {
+            this.loop = loop;
+            this.name = name;
+            this.operator = operator;
+            this.bound = bound;
+            this.step = step;
+            this.observed = observed;
+            this.scoped = scoped;
+            this.independent = independent;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitCountedForStmt(this);
+        }
+
+        final For loop;
+        final Token name;
+        final TokenType operator;
+        final Expr bound;
+        final int step;
+        final boolean observed;
+        final boolean scoped;
+        final boolean independent;
+    }
+
+    // A KUNG chain whose conditions each compare one variable with a different
+    // NUMERO or LETRA constant, taking its branch by the variable's value. When
+    // the constants are dense, `table` holds branch + 1 at constant - low and 0
+    // elsewhere; otherwise `cases` maps each constant to its branch. Branches are
+    // numbered as in the chain: 0 for KUNG, then each KUNG DILI, then KUNG WALA.
+    static class Switch extends Stmt {
+        Switch(If chain, Token name, boolean character, int low, int[] table, Map<Integer, Integer> cases,
+               boolean[] scoped) {
+            this.chain = chain;
+            this.name = name;
+            this.character = character;
+            this.low = low;
+            this.table = table;
+            this.cases = cases;
+            this.scoped = scoped;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSwitchStmt(this);
+        }
+
+        final If chain;
+        final Token name;
+        final boolean character;
+        final int low;
+        final int[] table;
+        final Map<Integer, Integer> cases;
+        // Whether each branch declares variables and so needs its own scope.
+        final boolean[] scoped;
+    }
 
     static class Int extends Stmt {
-        Int(Token name, Expr initializer) {
+        Int(Token name, Expr initializer, boolean constant) {
             this.name = name;
             this.initializer = initializer;
+            this.constant = constant;
         }
 
         @Override
@@ -133,12 +220,16 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        // Declared PIRMI, so never assigned again.
+        final boolean constant;
+        boolean verified;
     }
 
     static class Float extends Stmt {
-        Float(Token name, Expr initializer) {
+        Float(Token name, Expr initializer, boolean constant) {
             this.name = name;
             this.initializer = initializer;
+            this.constant = constant;
         }
 
         @Override
@@ -148,12 +239,16 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        // Declared PIRMI, so never assigned again.
+        final boolean constant;
+        boolean verified;
     }
 
     static class Char extends Stmt {
-        Char(Token name, Expr initializer) {
+        Char(Token name, Expr initializer, boolean constant) {
             this.name = name;
             this.initializer = initializer;
+            this.constant = constant;
         }
 
         @Override
@@ -163,12 +258,16 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        // Declared PIRMI, so never assigned again.
+        final boolean constant;
+        boolean verified;
     }
 
     static class Bool extends Stmt {
-        Bool(Token name, Expr initializer) {
+        Bool(Token name, Expr initializer, boolean constant) {
             this.name = name;
             this.initializer = initializer;
+            this.constant = constant;
         }
 
         @Override
@@ -178,6 +277,173 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+        // Declared PIRMI, so never assigned again.
+        final boolean constant;
+        boolean verified;
+    }
+
+    static class Array extends Stmt {
+        Array(TokenType kind, Token name, Expr size) {
+            this.kind = kind;
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitArrayStmt(this);
+        }
+
+        final TokenType kind;
+        final Token name;
+        final Expr size;
+    }
+
+    static class Text extends Stmt {
+        Text(Token name, Expr initializer, boolean constant) {
+            this.name = name;
+            this.initializer = initializer;
+            this.constant = constant;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitTextStmt(this);
+        }
+
+        final Token name;
+        final Expr initializer;
+        // Declared PIRMI, so never assigned again.
+        final boolean constant;
+        boolean verified;
+    }
+
+    // `name = name & a & b` on a PULONG, appending each part to the variable in place.
+    static class Append extends Stmt {
+        Append(Token name, List<Expr> parts) {
+            this.name = name;
+            this.parts = parts;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitAppendStmt(this);
+        }
+
+        final Token name;
+        final List<Expr> parts;
+    }
+
+    static class Function extends Stmt {
+        Function(Token name, TokenType returnType, List<Parameter> params, List<Stmt> body) {
+            this.name = name;
+            this.returnType = returnType;
+            this.params = params;
+            this.body = body;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitFunctionStmt(this);
+        }
+
+        final Token name;
+        // null for a function that returns no value.
+        final TokenType returnType;
+        final List<Parameter> params;
+        final List<Stmt> body;
+        // Invariant slots used by loops in the body, saved around each call.
+        int slotsFrom;
+        int slotsTo;
+    }
+
+    static class Return extends Stmt {
+        Return(Token keyword, TokenType type, Expr value, boolean tail) {
+            this.keyword = keyword;
+            this.type = type;
+            this.value = value;
+            this.tail = tail;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitReturnStmt(this);
+        }
+
+        final Token keyword;
+        final TokenType type;
+        final Expr value;
+        // `IBALIK f(...)` inside f itself, which reuses the current frame.
+        final boolean tail;
+        boolean verified;
+    }
+
+    // `IPAKITA: a & b & ...`, fused by the optimizer to print the parts without
+    // building each intermediate string.
+    static class PrintConcat extends Stmt {
+        PrintConcat(List<Expr> parts, Print original) {
+            this.parts = parts;
+            this.original = original;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitPrintConcatStmt(this);
+        }
+
+        final List<Expr> parts;
+        final Print original;
+    }
+
+    // `DUNGAN PUNDOK{ ... } PUNDOK{ ... }`: runs the blocks at the same time and
+    // waits for all of them. They may only write their own variables.
+    static class Concurrent extends Stmt {
+        Concurrent(Token keyword, List<List<Stmt>> blocks) {
+            this.keyword = keyword;
+            this.blocks = blocks;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitConcurrentStmt(this);
+        }
+
+        final Token keyword;
+        final List<List<Stmt>> blocks;
+    }
+
+    // The whole body of a KUNG branch, left unparsed by a lazy parser: the
+    // tokens from `from` up to the brace that closes `brace`. Parser.body()
+    // parses it the first time it runs.
+    static class Deferred extends Stmt {
+        Deferred(Parser parser, Token brace, int from, Token functionName, TokenType functionType) {
+            this.parser = parser;
+            this.brace = brace;
+            this.from = from;
+            this.functionName = functionName;
+            this.functionType = functionType;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitDeferredStmt(this);
+        }
+
+        final Parser parser;
+        final Token brace;
+        final int from;
+        // The function the branch is in, for IBALIK.
+        final Token functionName;
+        final TokenType functionType;
+        // Set once by the parser; the rest only under the lock of this node.
+        volatile List<Stmt> statements;
+        String errors;
+        // The token the first syntax error was found at.
+        int failedAt;
+        // The checker as it stood at the branch, set when it gets there, and
+        // the type errors in the parsed statements once checked, "" for none.
+        volatile TypeChecker checker;
+        volatile String typeErrors;
     }
 
     abstract <R> R accept(Visitor<R> visitor);
@@ -39,6 +39,7 @@ enum TokenType {
     FLOAT,
     CHAR,
     BOOL,
+    ARRAY,
     NULL,
     STRING_LITERAL,
     INT_LITERAL,
@@ -60,5 +61,10 @@ enum TokenType {
     OR,
     DECLARATION,
     BLOCK,
+    LENGTH,
+    FUNCTION,
+    RETURN,
+    CONCURRENT,
+    CONSTANT,
     EOF,
 }
@@ -0,0 +1,761 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Infers expression types from the MUGNA declarations and literals and reports
+// every type error before the program runs. Nodes whose operand and assignment
+// types are proven are marked `verified`, which lets the interpreter skip the
+// matching runtime checks.
+//
+// A node is only proven when its operands are also definitely initialized, since
+// a declared but unassigned variable still holds null at runtime. Assignments
+// made inside a PUNDOK are forgotten when it ends, because a runtime error
+// abandons the rest of the block without stopping the program.
+//
+// Every flag is recomputed on each check, so a tree reused from an earlier
+// parse of an edited program never keeps a proof that no longer holds.
+public class TypeChecker implements Expr.Visitor<TypeChecker.Type>, Stmt.Visitor<Void> {
+
+    static final class Type {
+        final TokenType kind;
+        final boolean definite;
+        final TokenType element;
+        // Declared PIRMI, and the value it was initialized with when that is
+        // known before the program runs.
+        final boolean constant;
+        final Expr.Literal value;
+
+        private Type(TokenType kind, boolean definite, TokenType element, boolean constant, Expr.Literal value) {
+            this.kind = kind;
+            this.definite = definite;
+            this.element = element;
+            this.constant = constant;
+            this.value = value;
+        }
+
+        static final Type UNKNOWN = new Type(null, false, null, false, null);
+
+        static Type of(TokenType kind, boolean definite) {
+            if (kind == null) return UNKNOWN;
+            return new Type(kind, definite, null, false, null);
+        }
+
+        // Arrays are allocated when declared, so they are never null.
+        static Type arrayOf(TokenType element) {
+            return new Type(TokenType.ARRAY, true, element, false, null);
+        }
+
+        static Type constant(TokenType kind, Expr.Literal value) {
+            return new Type(kind, false, null, true, value);
+        }
+    }
+
+    private final List<Map<Integer, Type>> scopes = new ArrayList<>();
+    // Scopes shared with a fork, which are copied before they are written.
+    private final BitSet shared = new BitSet();
+    private BitSet initialized = new BitSet();
+    // Only declared at the top level, so forks share it.
+    private Map<Integer, Stmt.Function> functions = new HashMap<>();
+    // What begin() recorded: each changed top-level entry's earlier value, or
+    // null where there was none.
+    private Map<Integer, Type> savedScope;
+    private Map<Integer, Stmt.Function> savedFunctions;
+    private BitSet savedInitialized;
+    private Stmt.Function function;
+    // Index of the first scope of the DUNGAN block being checked, or -1 outside
+    // one. Variables in the scopes below it are shared with the other blocks.
+    private int concurrent = -1;
+
+    TypeChecker() {
+        scopes.add(new HashMap<>());
+    }
+
+    // Starts recording the top-level entries that are about to change, so that
+    // rollback() can restore them without copying every other entry.
+    void begin() {
+        savedScope = new HashMap<>();
+        savedFunctions = new HashMap<>();
+        savedInitialized = (BitSet) initialized.clone();
+    }
+
+    void commit() {
+        savedScope = null;
+        savedFunctions = null;
+        savedInitialized = null;
+    }
+
+    void rollback() {
+        Map<Integer, Type> scope = writable(0);
+        savedScope.forEach((symbol, type) -> {
+            if (type == null) {
+                scope.remove(symbol);
+            } else {
+                scope.put(symbol, type);
+            }
+        });
+        savedFunctions.forEach((symbol, function) -> {
+            if (function == null) {
+                functions.remove(symbol);
+            } else {
+                functions.put(symbol, function);
+            }
+        });
+        initialized = savedInitialized;
+        commit();
+    }
+
+    private void save(int symbol) {
+        if (savedScope != null && !savedScope.containsKey(symbol)) {
+            savedScope.put(symbol, scopes.get(0).get(symbol));
+        }
+    }
+
+    private void saveFunction(int symbol) {
+        if (savedFunctions != null && !savedFunctions.containsKey(symbol)) {
+            savedFunctions.put(symbol, functions.get(symbol));
+        }
+    }
+
+    void forget(Token name) {
+        save(name.symbol);
+        writable(0).remove(name.symbol);
+        initialized.clear(name.symbol);
+    }
+
+    void forgetFunction(Token name) {
+        saveFunction(name.symbol);
+        functions.remove(name.symbol);
+    }
+
+    void check(List<Stmt> statements) {
+        // Top-level functions may be called before they are declared.
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function) {
+                Stmt.Function function = (Stmt.Function) statement;
+                saveFunction(function.name.symbol);
+                if (functions.putIfAbsent(function.name.symbol, function) != null) {
+                    Main.typeError(function.name, "Function '" + function.name.lexeme + "' is already defined.");
+                }
+            }
+        }
+        for (Stmt statement : statements) {
+            check(statement);
+        }
+    }
+
+    private void check(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private Type check(Expr expr) {
+        if (expr == null) return Type.UNKNOWN;
+        return expr.accept(this);
+    }
+
+    private void checkBlock(List<Stmt> statements) {
+        BitSet before = (BitSet) initialized.clone();
+        scopes.add(new HashMap<>());
+        try {
+            check(statements);
+        } finally {
+            pop();
+            initialized = before;
+        }
+    }
+
+    private void pop() {
+        scopes.remove(scopes.size() - 1);
+        shared.clear(scopes.size());
+    }
+
+    // The scope at `depth`, copied first if a fork still shares it.
+    private Map<Integer, Type> writable(int depth) {
+        Map<Integer, Type> scope = scopes.get(depth);
+        if (shared.get(depth)) {
+            scope = new HashMap<>(scope);
+            scopes.set(depth, scope);
+            shared.clear(depth);
+        }
+        return scope;
+    }
+
+    private void checkCondition(Expr condition) {
+        Type type = check(condition);
+        if (type.kind != null && type.kind != TokenType.BOOL) {
+            Main.typeError(tokenOf(condition), "Condition must be a Boolean.");
+        }
+    }
+
+    private static Token tokenOf(Expr expr) {
+        while (expr instanceof Expr.Grouping || expr instanceof Expr.Invariant) {
+            expr = expr instanceof Expr.Grouping ? ((Expr.Grouping) expr).expression
+                    : ((Expr.Invariant) expr).expression;
+        }
+        if (expr instanceof Expr.Binary) return ((Expr.Binary) expr).operator;
+        if (expr instanceof Expr.Logical) return ((Expr.Logical) expr).operator;
+        if (expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator;
+        if (expr instanceof Expr.Assign) return ((Expr.Assign) expr).name;
+        if (expr instanceof Expr.Variable) return ((Expr.Variable) expr).name;
+        if (expr instanceof Expr.Index) return ((Expr.Index) expr).name;
+        if (expr instanceof Expr.IndexAssign) return ((Expr.IndexAssign) expr).name;
+        if (expr instanceof Expr.Length) return ((Expr.Length) expr).name;
+        if (expr instanceof Expr.Call) return ((Expr.Call) expr).name;
+        return null;
+    }
+
+    private boolean declare(Token name, Expr initializer, TokenType kind, boolean constant) {
+        Type value = check(initializer);
+        if (value.kind != null && value.kind != kind) {
+            Main.typeError(name, "Type mismatch: Cannot initialize variable '" + name.lexeme + "' of type "
+                    + kind + " with a value of type " + value.kind + ".");
+        }
+        boolean verified = value.kind == kind && value.definite;
+
+        Type declared = Type.of(kind, false);
+        if (constant) {
+            Object folded = verified ? Optimizer.fold(initializer) : Interpreter.UNSET;
+            declared = Type.constant(kind, folded == Interpreter.UNSET ? null : new Expr.Literal(folded));
+        }
+        if (!define(name, declared)) {
+            return false;
+        }
+        if (initializer != null && value.definite) {
+            initialized.set(name.symbol);
+        }
+        return verified;
+    }
+
+    private boolean define(Token name, Type type) {
+        if (scopes.size() == 1) save(name.symbol);
+        Map<Integer, Type> scope = writable(scopes.size() - 1);
+        initialized.clear(name.symbol);
+        if (resolve(name.symbol) != null) {
+            // The runtime rejects this declaration; stop reasoning about the name.
+            scope.put(name.symbol, Type.UNKNOWN);
+            return false;
+        }
+        scope.put(name.symbol, type);
+        return true;
+    }
+
+    private Type resolve(int symbol) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Map<Integer, Type> scope = scopes.get(i);
+            if (scope.containsKey(symbol)) {
+                return scope.get(symbol);
+            }
+        }
+        return null;
+    }
+
+    // Whether a DUNGAN block being checked would write `name` at the same time as
+    // the others could read or write it.
+    private boolean isShared(Token name) {
+        if (concurrent < 0) return false;
+        for (int i = scopes.size() - 1; i >= concurrent; i--) {
+            if (scopes.get(i).containsKey(name.symbol)) return false;
+        }
+        return resolve(name.symbol) != null;
+    }
+
+    private void checkPrivate(Token name) {
+        if (isShared(name)) {
+            Main.typeError(name, "Cannot assign to shared variable '" + name.lexeme + "' inside DUNGAN.");
+        }
+    }
+
+    private void checkMutable(Token name, Type declared) {
+        if (declared != null && declared.constant) {
+            Main.typeError(name, "Cannot assign to constant '" + name.lexeme + "'.");
+        }
+    }
+
+    // Whether calling `callee` may write a global or read input, itself or
+    // through any function it calls.
+    private boolean touchesShared(Stmt.Function callee) {
+        BitSet seen = new BitSet();
+        List<Stmt.Function> pending = new ArrayList<>();
+        seen.set(callee.name.symbol);
+        pending.add(callee);
+        while (!pending.isEmpty()) {
+            Stmt.Function next = pending.remove(pending.size() - 1);
+            Effects effects = Effects.of(next.body);
+            BitSet escaping = (BitSet) effects.escaping.clone();
+            for (Parameter param : next.params) {
+                escaping.clear(param.name.symbol);
+            }
+            if (!escaping.isEmpty() || effects.scans) return true;
+
+            BitSet called = effects.called;
+            for (int symbol = called.nextSetBit(0); symbol >= 0; symbol = called.nextSetBit(symbol + 1)) {
+                Stmt.Function target = functions.get(symbol);
+                if (target != null && !seen.get(symbol)) {
+                    seen.set(symbol);
+                    pending.add(target);
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isNumber(TokenType kind) {
+        return kind == TokenType.INT || kind == TokenType.FLOAT;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        checkBlock(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        check(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        checkCondition(stmt.condition);
+        checkBlock(stmt.thenBranch);
+
+        // Else-if conditions only run when the earlier ones were false.
+        BitSet before = (BitSet) initialized.clone();
+        for (int i = 0; i < stmt.elseIfConditions.size(); i++) {
+            checkCondition(stmt.elseIfConditions.get(i));
+            checkBlock(stmt.elseIfBranches.get(i));
+        }
+        initialized = before;
+
+        if (stmt.elseBranch != null) {
+            checkBlock(stmt.elseBranch);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        check(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitScanStmt(Stmt.Scan stmt) {
+        // DAWAT values are only typed once they are read, so there is nothing to prove here.
+        if (concurrent >= 0) {
+            Main.typeError(stmt.identifiers.get(0), "DAWAT cannot be used inside DUNGAN.");
+        }
+        for (Token identifier : stmt.identifiers) {
+            Type declared = resolve(identifier.symbol);
+            if (declared != null && declared.kind == TokenType.ARRAY) {
+                Main.typeError(identifier, "Cannot read into array '" + identifier.lexeme + "'.");
+            }
+            checkMutable(identifier, declared);
+            initialized.set(identifier.symbol);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitForStmt(Stmt.For stmt) {
+        if (stmt.initializer != null) {
+            check(stmt.initializer);
+        }
+        checkCondition(stmt.condition);
+
+        BitSet before = (BitSet) initialized.clone();
+        checkBlock(stmt.body);
+        check(stmt.increment);
+        initialized = before;
+        return null;
+    }
+
+    @Override
+    public Void visitCountedForStmt(Stmt.CountedFor stmt) {
+        return visitForStmt(stmt.loop);
+    }
+
+    @Override
+    public Void visitSwitchStmt(Stmt.Switch stmt) {
+        // Only produced by the optimizer, after checking.
+        return visitIfStmt(stmt.chain);
+    }
+
+    @Override
+    public Void visitIntStmt(Stmt.Int stmt) {
+        stmt.verified = declare(stmt.name, stmt.initializer, TokenType.INT, stmt.constant);
+        return null;
+    }
+
+    @Override
+    public Void visitFloatStmt(Stmt.Float stmt) {
+        stmt.verified = declare(stmt.name, stmt.initializer, TokenType.FLOAT, stmt.constant);
+        return null;
+    }
+
+    @Override
+    public Void visitCharStmt(Stmt.Char stmt) {
+        stmt.verified = declare(stmt.name, stmt.initializer, TokenType.CHAR, stmt.constant);
+        return null;
+    }
+
+    @Override
+    public Void visitBoolStmt(Stmt.Bool stmt) {
+        stmt.verified = declare(stmt.name, stmt.initializer, TokenType.BOOL, stmt.constant);
+        return null;
+    }
+
+    @Override
+    public Void visitTextStmt(Stmt.Text stmt) {
+        stmt.verified = declare(stmt.name, stmt.initializer, TokenType.STRING, stmt.constant);
+        return null;
+    }
+
+    // The body is checked where it is declared, but may run at any point, so
+    // no global is assumed to be initialized inside it.
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        Stmt.Function enclosing = function;
+        BitSet before = initialized;
+        function = stmt;
+        initialized = new BitSet();
+
+        Map<Integer, Type> frame = new HashMap<>();
+        scopes.add(frame);
+        try {
+            for (Parameter param : stmt.params) {
+                if (frame.containsKey(param.name.symbol)) {
+                    Main.typeError(param.name, "Duplicate parameter '" + param.name.lexeme + "'.");
+                }
+                // Arguments are checked against the parameter type, so they are never null.
+                frame.put(param.name.symbol, Type.of(param.type.type, true));
+                initialized.set(param.name.symbol);
+            }
+            check(stmt.body);
+        } finally {
+            pop();
+            initialized = before;
+            function = enclosing;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        stmt.verified = false;
+        if (concurrent >= 0) {
+            Main.typeError(stmt.keyword, "IBALIK cannot be used inside DUNGAN.");
+        }
+        Type value = check(stmt.value);
+        if (stmt.value == null) return null;
+
+        if (value.kind != null && value.kind != stmt.type) {
+            Main.typeError(stmt.keyword, "Type mismatch: Cannot return a value of type " + value.kind
+                    + " from function '" + function.name.lexeme + "' of type " + stmt.type + ".");
+            return null;
+        }
+        stmt.verified = value.kind == stmt.type && value.definite;
+        return null;
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) {
+        expr.verified = false;
+        List<Type> arguments = new ArrayList<>();
+        for (Expr argument : expr.arguments) {
+            arguments.add(check(argument));
+        }
+
+        Stmt.Function callee = functions.get(expr.name.symbol);
+        if (callee == null) {
+            Main.typeError(expr.name, "Undefined function '" + expr.name.lexeme + "'.");
+            return Type.UNKNOWN;
+        }
+        if (arguments.size() != callee.params.size()) {
+            Main.typeError(expr.name, "Function '" + expr.name.lexeme + "' expects " + callee.params.size()
+                    + " argument(s) but got " + arguments.size() + ".");
+            return Type.UNKNOWN;
+        }
+        if (concurrent >= 0 && touchesShared(callee)) {
+            Main.typeError(expr.name, "Function '" + expr.name.lexeme
+                    + "' writes shared variables or reads input, so it cannot be called inside DUNGAN.");
+        }
+
+        boolean verified = true;
+        for (int i = 0; i < arguments.size(); i++) {
+            Type argument = arguments.get(i);
+            Parameter param = callee.params.get(i);
+            if (argument.kind != null && argument.kind != param.type.type) {
+                Main.typeError(expr.name, "Type mismatch: Cannot pass a value of type " + argument.kind
+                        + " to parameter '" + param.name.lexeme + "' of type " + param.type.type + ".");
+            }
+            verified &= argument.kind == param.type.type && argument.definite;
+        }
+        expr.verified = verified;
+        // A function may end without IBALIK, which yields null.
+        return Type.of(callee.returnType, false);
+    }
+
+    @Override
+    public Void visitAppendStmt(Stmt.Append stmt) {
+        // Only produced by the optimizer, after checking.
+        return null;
+    }
+
+    @Override
+    public Void visitArrayStmt(Stmt.Array stmt) {
+        checkIndex(stmt.size, "Array size must be an integer.");
+        define(stmt.name, Type.arrayOf(stmt.kind));
+        return null;
+    }
+
+    private boolean checkIndex(Expr index, String message) {
+        Type type = check(index);
+        if (type.kind != null && type.kind != TokenType.INT) {
+            Main.typeError(tokenOf(index), message);
+        }
+        return type.kind == TokenType.INT && type.definite;
+    }
+
+    private Type array(Token name) {
+        Type declared = resolve(name.symbol);
+        if (declared == null || declared.kind == null) return null;
+        if (declared.kind != TokenType.ARRAY) {
+            Main.typeError(name, "Variable '" + name.lexeme + "' is not an array.");
+            return null;
+        }
+        return declared;
+    }
+
+    @Override
+    public Type visitIndexExpr(Expr.Index expr) {
+        checkIndex(expr.index, "Array index must be an integer.");
+        Type array = array(expr.name);
+        if (array == null) return Type.UNKNOWN;
+        return Type.of(array.element, true);
+    }
+
+    @Override
+    public Type visitIndexAssignExpr(Expr.IndexAssign expr) {
+        expr.verified = false;
+        boolean index = checkIndex(expr.index, "Array index must be an integer.");
+        Type value = check(expr.value);
+        Type array = array(expr.name);
+        checkPrivate(expr.name);
+        if (array == null) return Type.UNKNOWN;
+
+        if (value.kind != null && value.kind != array.element) {
+            Main.typeError(expr.name, "Type mismatch: Cannot assign a value of type " + value.kind
+                    + " to an element of array '" + expr.name.lexeme + "' of type " + array.element + ".");
+            return Type.UNKNOWN;
+        }
+
+        expr.verified = index && value.kind == array.element && value.definite;
+        return Type.of(array.element, value.definite);
+    }
+
+    @Override
+    public Type visitLengthExpr(Expr.Length expr) {
+        array(expr.name);
+        return Type.of(TokenType.INT, true);
+    }
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) {
+        expr.verified = false;
+        Type value = check(expr.value);
+        checkPrivate(expr.name);
+        Type declared = resolve(expr.name.symbol);
+        checkMutable(expr.name, declared);
+        if (declared == null || declared.kind == null) return Type.UNKNOWN;
+        TokenType target = declared.kind;
+
+        // As at runtime, where no value is accepted for a whole array.
+        if (target == TokenType.ARRAY) {
+            Main.typeError(expr.name, "Cannot assign to array '" + expr.name.lexeme
+                    + "'; assign its elements instead.");
+            return Type.UNKNOWN;
+        }
+        if (value.kind != null && value.kind != target) {
+            Main.typeError(expr.name, "Type mismatch: Cannot assign a value of type " + value.kind + " to variable '"
+                    + expr.name.lexeme + "' of type " + target + ".");
+            return Type.UNKNOWN;
+        }
+
+        expr.verified = value.kind == target && value.definite;
+        if (value.definite) {
+            initialized.set(expr.name.symbol);
+        }
+        return Type.of(target, value.definite);
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        expr.verified = false;
+        Type left = check(expr.left);
+        Type right = check(expr.right);
+
+        switch (expr.operator.type) {
+            case AMPERSAND:
+                return Type.of(TokenType.STRING, true);
+            case EQUAL_EQUAL:
+            case NOT_EQUAL:
+                return Type.of(TokenType.BOOL, true);
+            default:
+                break;
+        }
+
+        if (left.kind == null || right.kind == null) return Type.UNKNOWN;
+        if (left.kind != right.kind || !isNumber(left.kind)) {
+            Main.typeError(expr.operator, "Operand must be an integer or a float number, found "
+                    + left.kind + " " + expr.operator.lexeme + " " + right.kind + ".");
+            return Type.UNKNOWN;
+        }
+
+        boolean definite = left.definite && right.definite;
+        expr.verified = definite;
+        switch (expr.operator.type) {
+            case GREATER_THAN:
+            case GREATER_THAN_EQUAL:
+            case LESS_THAN:
+            case LESS_THAN_EQUAL:
+                return Type.of(TokenType.BOOL, definite);
+            default:
+                return Type.of(left.kind, definite);
+        }
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return check(expr.expression);
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        Object value = expr.value;
+        if (Arithmetic.isInteger(value)) return Type.of(TokenType.INT, true);
+        if (value instanceof Double) return Type.of(TokenType.FLOAT, true);
+        if (value instanceof Character) return Type.of(TokenType.CHAR, true);
+        if (value instanceof Boolean) return Type.of(TokenType.BOOL, true);
+        if (value instanceof String) return Type.of(TokenType.STRING, true);
+        return Type.UNKNOWN;
+    }
+
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        Type left = check(expr.left);
+
+        // The right operand may be skipped, so its assignments are not definite.
+        BitSet before = (BitSet) initialized.clone();
+        Type right = check(expr.right);
+        initialized = before;
+
+        if (left.kind == null || left.kind != right.kind || left.kind == TokenType.ARRAY) return Type.UNKNOWN;
+        return Type.of(left.kind, left.definite && right.definite);
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        expr.verified = false;
+        Type right = check(expr.right);
+
+        if (expr.operator.type == TokenType.NOT) {
+            return Type.of(TokenType.BOOL, true);
+        }
+
+        if (right.kind == null) return Type.UNKNOWN;
+        if (!isNumber(right.kind)) {
+            Main.typeError(expr.operator, "Operand must be an integer or a float number, found "
+                    + expr.operator.lexeme + right.kind + ".");
+            return Type.UNKNOWN;
+        }
+
+        expr.verified = right.definite;
+        return right;
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        expr.constant = null;
+        Type declared = resolve(expr.name.symbol);
+        if (declared == null) return Type.UNKNOWN;
+        if (declared.kind == TokenType.ARRAY) return declared;
+        boolean definite = initialized.get(expr.name.symbol);
+        // Only where the declaration is known to have run, so a read that
+        // would fail as undefined still does.
+        if (definite) expr.constant = declared.value;
+        return Type.of(declared.kind, definite);
+    }
+
+    @Override
+    public Type visitInvariantExpr(Expr.Invariant expr) {
+        return check(expr.expression);
+    }
+
+    @Override
+    public Type visitIncrementExpr(Expr.Increment expr) {
+        // Only produced by the optimizer, after checking.
+        return check(expr.original);
+    }
+
+    @Override
+    public Type visitCompareConstantExpr(Expr.CompareConstant expr) {
+        // Only produced by the optimizer, after checking.
+        return check(expr.original);
+    }
+
+    @Override
+    public Type visitRemainderExpr(Expr.Remainder expr) {
+        // Only produced by the optimizer, after checking.
+        return check(expr.original);
+    }
+
+    // Each block is checked as if it ran alone after the statements before
+    // DUNGAN, since none of them can change what the others see.
+    @Override
+    public Void visitConcurrentStmt(Stmt.Concurrent stmt) {
+        int enclosing = concurrent;
+        try {
+            for (List<Stmt> block : stmt.blocks) {
+                concurrent = scopes.size();
+                checkBlock(block);
+            }
+        } finally {
+            concurrent = enclosing;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintConcatStmt(Stmt.PrintConcat stmt) {
+        // Only produced by the optimizer, after checking.
+        return null;
+    }
+
+    // Not parsed yet. The parser checks its statements once they are, from a
+    // copy of the checker as it stands here.
+    @Override
+    public Void visitDeferredStmt(Stmt.Deferred stmt) {
+        stmt.checker = fork();
+        return null;
+    }
+
+    // Both sides copy a scope before writing it, so a fork costs little
+    // however many variables are in scope.
+    private TypeChecker fork() {
+        TypeChecker fork = new TypeChecker();
+        fork.scopes.clear();
+        fork.scopes.addAll(scopes);
+        shared.set(0, scopes.size());
+        fork.shared.set(0, scopes.size());
+        fork.initialized = (BitSet) initialized.clone();
+        fork.functions = functions;
+        fork.function = function;
+        fork.concurrent = concurrent;
+        return fork;
+    }
+}
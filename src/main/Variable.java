@@ -5,9 +5,22 @@ public class Variable {
     private Object value;
     private boolean mutable;
 
+    // Appends to a PULONG accumulate here and are only copied out when read, so
+    // building text in a loop stays linear.
+    private StringBuilder buffer;
+    private boolean pending;
+    // Belongs to a snapshot and may be seen by several forks, which copy it
+    // before their first write.
+    private boolean shared;
+
     public Variable(TokenType type, Object value) {
+        this(type, value, true);
+    }
+
+    public Variable(TokenType type, Object value, boolean mutable) {
         this.type = type;
         this.value = value;
+        this.mutable = mutable;
     }
 
     // Getters and setters
@@ -15,12 +28,59 @@ public class Variable {
         return type;
     }
 
+    public boolean isMutable() {
+        return mutable;
+    }
+
     public Object getValue() {
+        if (pending) {
+            value = buffer.toString();
+            pending = false;
+        }
         return value;
     }
 
+    public void setValue(Object value) {
+        this.value = value;
+        buffer = null;
+        pending = false;
+    }
+
+    void append(String text) {
+        if (buffer == null) {
+            buffer = new StringBuilder(value == null ? "" : (String) value);
+        }
+        buffer.append(text);
+        pending = true;
+    }
+
+    void append(char[] text, int offset, int length) {
+        if (buffer == null) {
+            buffer = new StringBuilder(value == null ? "" : (String) value);
+        }
+        buffer.append(text, offset, length);
+        pending = true;
+    }
+
+    boolean isShared() {
+        return shared;
+    }
+
+    // A detached copy, with arrays cloned so neither side sees the other's writes.
+    Variable copy(boolean shared) {
+        Object value = getValue();
+        if (value instanceof int[]) value = ((int[]) value).clone();
+        else if (value instanceof double[]) value = ((double[]) value).clone();
+        else if (value instanceof char[]) value = ((char[]) value).clone();
+        else if (value instanceof boolean[]) value = ((boolean[]) value).clone();
+
+        Variable copy = new Variable(type, value, mutable);
+        copy.shared = shared;
+        return copy;
+    }
+
     @Override
     public String toString() {
-        return value.toString();
+        return getValue().toString();
     }
 }
\ No newline at end of file
@@ -0,0 +1,234 @@
+package main;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// `--watch`: runs a script, then runs it again every time the file is saved.
+//
+// Between runs the previous source, its tokens and its parse are kept. Strings
+// and comments never span lines, so only the lines between the unchanged
+// prefix and suffix of the file are scanned again. Top-level statements whose
+// tokens did not change are taken from the previous parse; those after an
+// edit that added or removed lines are parsed again, since their tokens carry
+// new line numbers. Checking, optimizing and running always cover the whole
+// program.
+//
+// State is only kept from a version without syntax or type errors, so the run
+// after an error starts cold.
+public class Watch {
+    // Editors often save in several writes; wait for them to settle.
+    private static final long SETTLE_MILLIS = 50;
+
+    private final Path script;
+    private final Path inputPath;
+    private final SymbolTable symbols = new SymbolTable();
+
+    private List<String> lines = List.of();
+    private List<Token> tokens;
+    // Index in `tokens` of the first token on each line, and of EOF at the end.
+    private int[] lineStarts;
+    private Parser parser;
+
+    // What the last scan found, for reusing the parse and for the status line.
+    private int unchanged;
+    private int suffix;
+    private int shift;
+    private int rescanned;
+
+    Watch(Path script, Path inputPath) {
+        this.script = script.toAbsolutePath();
+        this.inputPath = inputPath;
+    }
+
+    void run() throws IOException, InterruptedException {
+        Path directory = script.getParent();
+        try (WatchService service = directory.getFileSystem().newWatchService()) {
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            String source = read();
+            if (source == null) {
+                System.err.println("Cannot read " + script + ".");
+                return;
+            }
+            runOnce(source);
+
+            for (;;) {
+                WatchKey key = service.take();
+                boolean changed = touched(key);
+                key.reset();
+                if (!changed) continue;
+
+                while ((key = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    touched(key);
+                    key.reset();
+                }
+                String next = read();
+                if (next == null || next.equals(source)) continue;
+                source = next;
+                runOnce(source);
+            }
+        }
+    }
+
+    private boolean touched(WatchKey key) {
+        boolean touched = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            touched |= script.getFileName().equals(event.context());
+        }
+        return touched;
+    }
+
+    // null while the file is missing, as it is in the middle of some saves.
+    private String read() throws IOException {
+        try {
+            return new String(Files.readAllBytes(script), Charset.defaultCharset());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private void runOnce(String source) {
+        Main.Report report = new Main.Report(System.err);
+        Main.setReport(report);
+        try {
+            long start = System.nanoTime();
+            List<String> next = split(source);
+            List<Token> scanned = scan(source, next);
+
+            Parser parsed = new Parser(scanned);
+            if (parser != null) {
+                parsed.reusing(parser, unchanged, suffix, shift);
+            }
+            List<Stmt> statements = null;
+            try {
+                statements = parsed.parse();
+                new TypeChecker().check(statements);
+            } catch (RuntimeException e) {
+                // Already reported as a syntax error.
+            } catch (StackOverflowError e) {
+                Main.tooDeep();
+            }
+            if (statements == null || report.hadError || report.hadRuntimeError) {
+                parser = null;
+                System.err.println("[watch] Waiting for changes to " + script.getFileName() + ".");
+                return;
+            }
+
+            lines = next;
+            tokens = scanned;
+            lineStarts = lineStarts(scanned, next.size());
+            parser = parsed;
+            long compiled = System.nanoTime();
+
+            Interpreter interpreter = new Interpreter(new Environment(), System.out, System.err);
+            interpreter.setInput(input());
+            try {
+                interpreter.interpret(new Optimizer().optimize(statements));
+            } catch (StackOverflowError e) {
+                Main.tooDeep();
+            }
+            System.out.flush();
+            long ran = System.nanoTime();
+
+            System.err.printf("[watch] Rescanned %d of %d lines, reparsed %d of %d statements; ready in %.1f ms, ran in %.1f ms.%n",
+                    rescanned, next.size(), statements.size() - parsed.reused(), statements.size(),
+                    (compiled - start) / 1e6, (ran - compiled) / 1e6);
+        } finally {
+            Main.setReport(null);
+        }
+    }
+
+    private InputSource input() {
+        if (inputPath == null) return InputSource.stdin();
+        try {
+            return InputSource.file(inputPath);
+        } catch (IOException e) {
+            System.err.println("Cannot read input from " + inputPath + ": " + e.getMessage());
+            return InputSource.lines(List.of());
+        }
+    }
+
+    // Scans only the lines that differ from the previous version, reusing the
+    // tokens before them and moving those after them to their new lines.
+    private List<Token> scan(String source, List<String> next) {
+        if (parser == null) {
+            rescanned = next.size();
+            return new Scanner(source, symbols).scanTokens();
+        }
+
+        int max = Math.min(lines.size(), next.size());
+        int prefix = 0;
+        while (prefix < max && lines.get(prefix).equals(next.get(prefix))) {
+            prefix++;
+        }
+        int common = 0;
+        while (common < max - prefix
+                && lines.get(lines.size() - 1 - common).equals(next.get(next.size() - 1 - common))) {
+            common++;
+        }
+        int oldEnd = lines.size() - common;
+        int newEnd = next.size() - common;
+        int delta = newEnd - oldEnd;
+
+        List<Token> middle = new Scanner(String.join("", next.subList(prefix, newEnd)), symbols, prefix + 1)
+                .scanTokens();
+        middle.remove(middle.size() - 1);
+        rescanned = newEnd - prefix;
+
+        int eof = tokens.size() - 1;
+        List<Token> result = new ArrayList<>(eof + middle.size() + 1);
+        result.addAll(tokens.subList(0, lineStarts[prefix]));
+        result.addAll(middle);
+        for (Token token : tokens.subList(lineStarts[oldEnd], eof)) {
+            result.add(delta == 0 ? token
+                    : new Token(token.type, token.lexeme, token.literal, token.line + delta, token.symbol));
+        }
+        boolean terminated = next.isEmpty() || next.get(next.size() - 1).endsWith("\n");
+        result.add(new Token(TokenType.EOF, "", null, terminated ? next.size() + 1 : next.size()));
+
+        unchanged = lineStarts[prefix];
+        // Statements after the edit hold tokens with their old lines, so they
+        // can only be reused when no line moved.
+        suffix = delta == 0 ? lineStarts[oldEnd] : Integer.MAX_VALUE;
+        shift = middle.size() - (lineStarts[oldEnd] - lineStarts[prefix]);
+        return result;
+    }
+
+    // Each line with its newline, as the scanner sees it.
+    private static List<String> split(String source) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < source.length(); i++) {
+            if (source.charAt(i) == '\n') {
+                lines.add(source.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < source.length()) {
+            lines.add(source.substring(start));
+        }
+        return lines;
+    }
+
+    private static int[] lineStarts(List<Token> tokens, int lines) {
+        int[] starts = new int[lines + 1];
+        int index = 0;
+        for (int line = 0; line <= lines; line++) {
+            while (index < tokens.size() - 1 && tokens.get(index).line <= line) {
+                index++;
+            }
+            starts[line] = index;
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,316 @@
+package main;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+// Generates valid programs of any size for scaling tests, together with the
+// DAWAT input they read.
+//
+//   java main.Workload [--<parameter> <n> ...] [--seed <n>] [--out <file>] [--input-out <file>]
+//
+// The parameters are those of Shape. The program goes to standard output
+// unless --out is given; the input is only written when --input-out is.
+// Values stay below 1000, so the program does the same work at every size.
+public class Workload {
+
+    static final class Shape {
+        static final String[] PARAMETERS = {
+                "declarations", "depth", "chain", "width", "statements", "inputs", "trips"
+        };
+
+        // NUMERO variables declared after SUGOD.
+        int declarations = 100;
+        // How deeply ALANG SA and KUNG nest, alternating.
+        int depth = 3;
+        // KUNG DILI branches after each KUNG.
+        int chain = 4;
+        // Operands in each & chain.
+        int width = 8;
+        // Lines of statements after the declarations, roughly.
+        int statements = 10_000;
+        // Lines of DAWAT input, each read by one iteration of a loop.
+        int inputs = 100;
+        // Iterations of the outermost ALANG SA of each nest. Those inside it run
+        // once, so run time grows with the lines and not with trips^depth.
+        int trips = 2;
+        long seed = 1;
+
+        int get(String parameter) {
+            switch (parameter) {
+                case "declarations":
+                    return declarations;
+                case "depth":
+                    return depth;
+                case "chain":
+                    return chain;
+                case "width":
+                    return width;
+                case "statements":
+                    return statements;
+                case "inputs":
+                    return inputs;
+                case "trips":
+                    return trips;
+                default:
+                    throw new IllegalArgumentException("Unknown parameter " + parameter + ".");
+            }
+        }
+
+        void set(String parameter, int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Parameter " + parameter + " cannot be negative.");
+            }
+            switch (parameter) {
+                case "declarations":
+                    declarations = value;
+                    break;
+                case "depth":
+                    depth = value;
+                    break;
+                case "chain":
+                    chain = value;
+                    break;
+                case "width":
+                    width = value;
+                    break;
+                case "statements":
+                    statements = value;
+                    break;
+                case "inputs":
+                    inputs = value;
+                    break;
+                case "trips":
+                    trips = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown parameter " + parameter + ".");
+            }
+        }
+
+        // Applies `--<parameter> <n>` or `--seed <n>` at args[i] and returns the
+        // index of its value, or -1 when args[i] is something else.
+        int parse(String[] args, int i) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) return -1;
+            String name = args[i].substring(2);
+            if (name.equals("seed")) {
+                seed = Long.parseLong(args[i + 1]);
+                return i + 1;
+            }
+            for (String parameter : PARAMETERS) {
+                if (parameter.equals(name)) {
+                    set(parameter, Integer.parseInt(args[i + 1]));
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        Shape copy() {
+            Shape copy = new Shape();
+            for (String parameter : PARAMETERS) {
+                copy.set(parameter, get(parameter));
+            }
+            copy.seed = seed;
+            return copy;
+        }
+    }
+
+    private static final int MAX_INDENT = 16;
+
+    private final Shape shape;
+    private final Random random;
+    private final StringBuilder out = new StringBuilder();
+    private int lines = 0;
+    private int indent = 0;
+
+    private Workload(Shape shape) {
+        this.shape = shape;
+        this.random = new Random(shape.seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Shape shape = new Shape();
+        String out = null;
+        String inputOut = null;
+        for (int i = 0; i < args.length; i++) {
+            int next;
+            if (args[i].equals("--out") && i + 1 < args.length) {
+                out = args[++i];
+            } else if (args[i].equals("--input-out") && i + 1 < args.length) {
+                inputOut = args[++i];
+            } else if ((next = parseOption(shape, args, i)) >= 0) {
+                i = next;
+            } else {
+                usage();
+            }
+        }
+
+        String source = source(shape);
+        if (out == null) {
+            System.out.print(source);
+        } else {
+            Files.write(Paths.get(out), source.getBytes(StandardCharsets.UTF_8));
+        }
+        if (inputOut != null) {
+            Files.write(Paths.get(inputOut), input(shape).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int parseOption(Shape shape, String[] args, int i) {
+        try {
+            return shape.parse(args, i);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(64);
+            return -1;
+        }
+    }
+
+    private static void usage() {
+        System.out.println("Usage: workload [--declarations <n>] [--depth <n>] [--chain <n>] [--width <n>]"
+                + " [--statements <n>] [--inputs <n>] [--trips <n>] [--seed <n>] [--out <file>] [--input-out <file>]");
+        System.exit(64);
+    }
+
+    static String source(Shape shape) {
+        return new Workload(shape).program();
+    }
+
+    // One NUMERO per line, for the loop that reads them.
+    static String input(Shape shape) {
+        Random random = new Random(shape.seed);
+        StringBuilder input = new StringBuilder(shape.inputs * 4);
+        for (int i = 0; i < shape.inputs; i++) {
+            input.append(random.nextInt(1000)).append('\n');
+        }
+        return input.toString();
+    }
+
+    private String program() {
+        int variables = Math.max(1, shape.declarations);
+        int counters = Math.max(1, shape.depth);
+
+        line("SUGOD");
+        for (int v = 0; v < variables; v++) {
+            line("MUGNA NUMERO v" + v + " = " + random.nextInt(1000));
+        }
+        for (int i = 0; i < counters; i++) {
+            line("MUGNA NUMERO i" + i);
+        }
+        line("MUGNA NUMERO r");
+        line("MUGNA NUMERO total = 0");
+        line("MUGNA PULONG s = \"\"");
+
+        if (shape.inputs > 0) {
+            open("ALANG SA (i0 = 0, i0 < " + shape.inputs + ", i0++)");
+            line("DAWAT: r");
+            line("total = (total + r) % 1000");
+            close();
+        }
+
+        int end = lines + shape.statements;
+        for (int unit = 0; lines < end; unit++) {
+            switch (unit % 4) {
+                case 0:
+                    assignment();
+                    break;
+                case 1:
+                    chain();
+                    break;
+                case 2:
+                    nest();
+                    break;
+                default:
+                    concatenation();
+                    break;
+            }
+        }
+
+        line("IPAKITA: \"total \" & total & \" v0 \" & v0 & \" s \" & s");
+        line("KATAPUSAN");
+        return out.toString();
+    }
+
+    private String variable() {
+        return "v" + random.nextInt(Math.max(1, shape.declarations));
+    }
+
+    private void assignment() {
+        line(variable() + " = (" + variable() + " * " + (1 + random.nextInt(9)) + " + " + variable() + ") % 1000");
+    }
+
+    // KUNG with `chain` KUNG DILI branches and a KUNG WALA, on v % (chain + 1).
+    private void chain() {
+        String tested = variable();
+        int cases = shape.chain + 1;
+        open("KUNG (" + tested + " % " + cases + " == 0)");
+        assignment();
+        for (int k = 1; k <= shape.chain; k++) {
+            reopen("KUNG DILI (" + tested + " % " + cases + " == " + k + ")");
+            assignment();
+        }
+        reopen("KUNG WALA");
+        assignment();
+        close();
+    }
+
+    // ALANG SA at even levels and KUNG at odd ones, `depth` deep in all.
+    // Iterative, so the generator is never what limits the depth; the
+    // interpreter's limit follows the heap (see Main.STACK_SIZE).
+    private void nest() {
+        for (int level = 0; level < shape.depth; level++) {
+            if (level % 2 == 0) {
+                String counter = "i" + level;
+                int trips = level == 0 ? shape.trips : 1;
+                open("ALANG SA (" + counter + " = 0, " + counter + " < " + trips + ", " + counter + "++)");
+            } else {
+                open("KUNG (" + variable() + " >= i" + (level - 1) + ")");
+            }
+        }
+        int counter = shape.depth == 0 ? 0 : (shape.depth - 1) / 2 * 2;
+        line(variable() + " = (" + variable() + " + i" + counter + ") % 1000");
+        for (int level = 0; level < shape.depth; level++) {
+            close();
+        }
+    }
+
+    private void concatenation() {
+        StringBuilder chain = new StringBuilder("s = ");
+        int width = Math.max(1, shape.width);
+        for (int k = 0; k < width; k++) {
+            if (k > 0) chain.append(" & \" \" & ");
+            chain.append(variable());
+        }
+        line(chain.toString());
+    }
+
+    private void open(String header) {
+        line(header);
+        line("PUNDOK{");
+        indent++;
+    }
+
+    private void reopen(String header) {
+        indent--;
+        line("}");
+        open(header);
+    }
+
+    private void close() {
+        indent--;
+        line("}");
+    }
+
+    // Indentation stops at MAX_INDENT levels, so the size of the source stays
+    // in proportion to its lines however deep the nesting.
+    private void line(String text) {
+        for (int i = 0; i < Math.min(indent, MAX_INDENT); i++) {
+            out.append("    ");
+        }
+        out.append(text).append('\n');
+        lines++;
+    }
+}